@@ -0,0 +1,133 @@
+package com.nix.lox;
+
+/**
+ * Self-specializing implementation of a binary operator, cached on the
+ * Binary node it belongs to. The first evaluation picks a node for the
+ * operand types it sees; if a later evaluation doesn't match, the node
+ * rewrites itself to the generic path for good.
+ */
+abstract class BinaryNode {
+  static final BinaryNode GENERIC = new Generic();
+
+  abstract Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right);
+
+  static Object evaluate(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+    BinaryNode node = expr.node;
+    if(node == null){
+      node = specialize(expr.operator.type, left, right);
+      expr.node = node;
+    }
+    return node.execute(interpreter, expr, left, right);
+  }
+
+  static BinaryNode specialize(TokenType operator, Object left, Object right) {
+    if(left instanceof Double && right instanceof Double){
+      switch(operator){
+        case PLUS: return new Add();
+        case MINUS: return new Subtract();
+        case STAR: return new Multiply();
+        case SLASH: return new Divide();
+        case GREATER: return new Greater();
+        case GREATER_EQUAL: return new GreaterEqual();
+        case LESS: return new Less();
+        case LESS_EQUAL: return new LessEqual();
+        case EQUAL_EQUAL: return new Equal();
+        case BANG_EQUAL: return new NotEqual();
+        default: break;
+      }
+    }
+    else if(operator == TokenType.PLUS && Concat.accepts(left, right)){
+      return new Concat();
+    }
+    return GENERIC;
+  }
+
+  Object generalize(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+    expr.node = GENERIC;
+    return interpreter.binary(expr, left, right);
+  }
+
+  static class Generic extends BinaryNode {
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+      return interpreter.binary(expr, left, right);
+    }
+  }
+
+  /**
+   * Both operands are doubles. Subclasses only do the arithmetic, the guard
+   * and the fallback live here.
+   */
+  static abstract class DoubleNode extends BinaryNode {
+    abstract Object apply(double left, double right);
+
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+      if(left instanceof Double && right instanceof Double){
+        return apply((Double)left, (Double)right);
+      }
+      return generalize(interpreter, expr, left, right);
+    }
+  }
+
+  static class Add extends DoubleNode {
+    Object apply(double left, double right) { return left + right; }
+  }
+
+  static class Subtract extends DoubleNode {
+    Object apply(double left, double right) { return left - right; }
+  }
+
+  static class Multiply extends DoubleNode {
+    Object apply(double left, double right) { return left * right; }
+  }
+
+  static class Divide extends DoubleNode {
+    Object apply(double left, double right) { return left / right; }
+  }
+
+  static class Greater extends DoubleNode {
+    Object apply(double left, double right) { return left > right; }
+  }
+
+  static class GreaterEqual extends DoubleNode {
+    Object apply(double left, double right) { return left >= right; }
+  }
+
+  static class Less extends DoubleNode {
+    Object apply(double left, double right) { return left < right; }
+  }
+
+  static class LessEqual extends DoubleNode {
+    Object apply(double left, double right) { return left <= right; }
+  }
+
+  // Double.equals, not ==, so NaN and -0.0 behave like the generic path.
+  static class Equal extends DoubleNode {
+    Object apply(double left, double right) { return Double.valueOf(left).equals(right); }
+  }
+
+  static class NotEqual extends DoubleNode {
+    Object apply(double left, double right) { return !Double.valueOf(left).equals(right); }
+  }
+
+  /**
+   * String concatenation where both sides are strings or doubles, which is
+   * exactly the case the generic path turns into toString() + toString().
+   */
+  static class Concat extends BinaryNode {
+    static boolean accepts(Object left, Object right) {
+      if(!Rope.isString(left) && !Rope.isString(right)) return false;
+      return (Rope.isString(left) || left instanceof Double)
+        && (Rope.isString(right) || right instanceof Double);
+    }
+
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+      if(accepts(left, right)){
+        return Rope.concat(left, right);
+      }
+      return generalize(interpreter, expr, left, right);
+    }
+  }
+}
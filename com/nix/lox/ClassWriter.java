@@ -0,0 +1,290 @@
+package com.nix.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of the JVM class file format for the {@link Jit}: one final
+ * class holding static methods. Classes are written as version 49 so the
+ * verifier infers types itself and no stack map frames are needed.
+ */
+class ClassWriter {
+  static final int ICONST_0 = 0x03, ICONST_1 = 0x04, DCONST_0 = 0x0e, DCONST_1 = 0x0f;
+  static final int LDC_W = 0x13, LDC2_W = 0x14;
+  static final int ILOAD = 0x15, DLOAD = 0x18, ISTORE = 0x36, DSTORE = 0x39;
+  static final int POP = 0x57, POP2 = 0x58, DUP = 0x59, DUP2 = 0x5c, DUP2_X2 = 0x5e, SWAP = 0x5f;
+  static final int IADD = 0x60, DADD = 0x63, ISUB = 0x64, DSUB = 0x67;
+  static final int IMUL = 0x68, DMUL = 0x6b, IDIV = 0x6c, DDIV = 0x6f, DNEG = 0x77;
+  static final int IXOR = 0x82, I2D = 0x87, D2I = 0x8e, DCMPL = 0x97, DCMPG = 0x98;
+  static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+  static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, GOTO = 0xa7;
+  static final int IRETURN = 0xac, DRETURN = 0xaf, RETURN = 0xb1;
+  static final int INVOKESTATIC = 0xb8, ATHROW = 0xbf;
+
+  private static final int ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+  private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+  private final DataOutputStream pool = new DataOutputStream(poolBytes);
+  private final Map<String, Integer> constants = new HashMap<>();
+  private int poolCount = 1;
+  private final String name;
+  private final int thisClass;
+  private final int superClass;
+  private final List<byte[]> methods = new ArrayList<>();
+
+  ClassWriter(String name){
+    this.name = name;
+    thisClass = classRef(name);
+    superClass = classRef("java/lang/Object");
+  }
+
+  int utf8(String value){
+    Integer index = constants.get("U" + value);
+    if(index != null) return index;
+    try{
+      pool.writeByte(1);
+      pool.writeUTF(value);
+    }
+    catch(IOException e){
+      throw new IllegalStateException(e);
+    }
+    return entry("U" + value, 1);
+  }
+
+  int classRef(String name){
+    int nameIndex = utf8(name);
+    return ref("C" + name, 7, nameIndex, -1);
+  }
+
+  int methodRef(String owner, String name, String descriptor){
+    int ownerIndex = classRef(owner);
+    int type = ref("N" + name + descriptor, 12, utf8(name), utf8(descriptor));
+    return ref("M" + owner + "." + name + descriptor, 10, ownerIndex, type);
+  }
+
+  String className(){
+    return name;
+  }
+
+  int intConstant(int value){
+    Integer index = constants.get("I" + value);
+    if(index != null) return index;
+    try{
+      pool.writeByte(3);
+      pool.writeInt(value);
+    }
+    catch(IOException e){
+      throw new IllegalStateException(e);
+    }
+    return entry("I" + value, 1);
+  }
+
+  int doubleConstant(double value){
+    String key = "D" + Double.doubleToRawLongBits(value);
+    Integer index = constants.get(key);
+    if(index != null) return index;
+    try{
+      pool.writeByte(6);
+      pool.writeDouble(value);
+    }
+    catch(IOException e){
+      throw new IllegalStateException(e);
+    }
+    // Doubles take two pool slots.
+    return entry(key, 2);
+  }
+
+  private int ref(String key, int tag, int a, int b){
+    Integer index = constants.get(key);
+    if(index != null) return index;
+    try{
+      pool.writeByte(tag);
+      pool.writeShort(a);
+      if(b != -1) pool.writeShort(b);
+    }
+    catch(IOException e){
+      throw new IllegalStateException(e);
+    }
+    return entry(key, 1);
+  }
+
+  private int entry(String key, int size){
+    int index = poolCount;
+    poolCount += size;
+    if(poolCount > 0xffff) throw new JitCompiler.Unsupported();
+    constants.put(key, index);
+    return index;
+  }
+
+  void method(String name, String descriptor, Code code){
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try{
+      out.writeShort(ACC_STATIC);
+      out.writeShort(utf8(name));
+      out.writeShort(utf8(descriptor));
+      out.writeShort(1);
+      out.writeShort(utf8("Code"));
+      out.writeInt(12 + code.count);
+      out.writeShort(code.maxStack);
+      out.writeShort(code.maxLocals);
+      out.writeInt(code.count);
+      out.write(code.code, 0, code.count);
+      out.writeShort(0);
+      out.writeShort(0);
+    }
+    catch(IOException e){
+      throw new IllegalStateException(e);
+    }
+    methods.add(bytes.toByteArray());
+  }
+
+  byte[] toBytes(){
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try{
+      out.writeInt(0xcafebabe);
+      out.writeShort(0);
+      out.writeShort(49);
+      out.writeShort(poolCount);
+      pool.flush();
+      poolBytes.writeTo(out);
+      out.writeShort(ACC_FINAL | ACC_SUPER);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(0);
+      out.writeShort(0);
+      out.writeShort(methods.size());
+      for(byte[] method : methods){
+        out.write(method);
+      }
+      out.writeShort(0);
+    }
+    catch(IOException e){
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * A method body. The operand stack depth is tracked as code is written;
+   * callers reset it where a statement starts, since branches that join
+   * inside an expression only ever make the count an overestimate.
+   */
+  static class Code {
+    byte[] code = new byte[64];
+    int count = 0;
+    int stack = 0;
+    int maxStack = 0;
+    int maxLocals;
+
+    Code(int parameterSlots){
+      maxLocals = parameterSlots;
+    }
+
+    void emit(int op){
+      write(op);
+      adjust(effect(op));
+    }
+
+    void emit(int op, int operand){
+      write(op);
+      if(op == ILOAD || op == DLOAD || op == ISTORE || op == DSTORE){
+        if(operand > 0xff) throw new JitCompiler.Unsupported();
+        write(operand);
+        int size = op == DLOAD || op == DSTORE ? 2 : 1;
+        maxLocals = Math.max(maxLocals, operand + size);
+        adjust(op == ILOAD ? 1 : op == DLOAD ? 2 : -size);
+      }
+      else{
+        writeShort(operand);
+        adjust(op == LDC2_W ? 2 : 1);
+      }
+    }
+
+    void invoke(int method, String descriptor){
+      write(INVOKESTATIC);
+      writeShort(method);
+      adjust(slots(descriptor.substring(descriptor.indexOf(')') + 1)) - slots(descriptor.substring(1, descriptor.indexOf(')'))));
+    }
+
+    int emitJump(int op){
+      write(op);
+      writeShort(0);
+      adjust(effect(op));
+      return count - 3;
+    }
+
+    void patchJump(int offset){
+      jumpTo(offset, count);
+    }
+
+    void emitLoop(int op, int target){
+      int offset = emitJump(op);
+      jumpTo(offset, target);
+    }
+
+    private void jumpTo(int offset, int target){
+      int jump = target - offset;
+      if(jump > Short.MAX_VALUE || jump < Short.MIN_VALUE) throw new JitCompiler.Unsupported();
+      code[offset + 1] = (byte)((jump >> 8) & 0xff);
+      code[offset + 2] = (byte)(jump & 0xff);
+    }
+
+    private void adjust(int delta){
+      stack = Math.max(0, stack + delta);
+      maxStack = Math.max(maxStack, stack);
+    }
+
+    private void write(int b){
+      if(count == code.length) code = Arrays.copyOf(code, count * 2);
+      if(count == 0xffff) throw new JitCompiler.Unsupported();
+      code[count++] = (byte)b;
+    }
+
+    private void writeShort(int value){
+      write((value >> 8) & 0xff);
+      write(value & 0xff);
+    }
+
+    private static int slots(String types){
+      int size = 0;
+      for(int i = 0; i < types.length(); i++){
+        char c = types.charAt(i);
+        if(c == 'D' || c == 'J') size += 2;
+        else if(c == 'L'){
+          size++;
+          i = types.indexOf(';', i);
+        }
+        else if(c != 'V') size++;
+      }
+      return size;
+    }
+
+    private static int effect(int op){
+      switch(op){
+        case ICONST_0: case ICONST_1: case DUP: case I2D:
+          return 1;
+        case DCONST_0: case DCONST_1: case DUP2: case DUP2_X2:
+          return 2;
+        case POP: case IADD: case ISUB: case IMUL: case IDIV: case IXOR: case D2I:
+        case IFEQ: case IFNE: case IFLT: case IFGE: case IFGT: case IFLE:
+        case IRETURN: case ATHROW:
+          return -1;
+        case POP2: case DADD: case DSUB: case DMUL: case DDIV:
+        case IF_ICMPEQ: case IF_ICMPNE: case DRETURN:
+          return -2;
+        case DCMPL: case DCMPG:
+          return -3;
+        default:
+          return 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.nix.lox;
+
+/**
+ * How the last statement finished. return, break and continue set this on
+ * the interpreter instead of throwing, and blocks, loops and function calls
+ * check it after each statement to unwind.
+ */
+enum Completion {
+  NORMAL,
+  RETURN,
+  BREAK,
+  CONTINUE
+}
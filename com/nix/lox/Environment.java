@@ -1,28 +1,76 @@
 package com.nix.lox;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * The global environment keeps its variables in a map; every local scope
+ * stores them in an array indexed by the slot the Resolver assigned.
+ * Local scopes also remember slot names so by-name access still works.
+ * A flat closure's environment is a local scope holding only what it
+ * captured, with the globals right above it.
+ */
 public class Environment {
+  // A local that closures share with the scope declaring it, because it's
+  // assigned after they capture it. Its slot holds the Cell instead of
+  // the value.
+  static final class Cell {
+    Object value;
+
+    Cell(Object value){
+      this.value = value;
+    }
+  }
+
+  private static final Object[] NO_SLOTS = new Object[0];
+  private static final String[] NO_NAMES = new String[0];
+
   final Environment enclosing;
-  public final Map<String, Field> values = new HashMap<>();
+  public final Map<String, Field> values;
+  Object[] slots = NO_SLOTS;
+  String[] names = NO_NAMES;
+  // Whether names belongs to a function's declaration rather than to this
+  // frame, so it's copied before anything writes to it.
+  private boolean sharedNames = false;
   public Interpreter interpreter;
+  // Bumped whenever a global is declared, or declared again, which gives
+  // it a new Field. Assigning a global changes its Field in place, so a
+  // site can keep using the Field it found until this moves.
+  int version = 0;
 
   Environment(Interpreter interpreter) {
     enclosing = null;
+    values = new HashMap<>();
     this.interpreter = interpreter;
   }
 
   Environment(Environment enclosing, Interpreter interpreter){
     this.enclosing = enclosing;
+    this.values = null;
     this.interpreter = interpreter;
   }
 
+  Environment(Environment enclosing, Interpreter interpreter, int size){
+    this(enclosing, interpreter);
+    slots = new Object[size];
+    names = new String[size];
+  }
+
+  // A function's frame, with the slot names its declaration worked out.
+  Environment(Environment enclosing, Interpreter interpreter, String[] names){
+    this(enclosing, interpreter);
+    slots = new Object[names.length];
+    this.names = names;
+    sharedNames = true;
+  }
+
   Object get(Token name){
-    if(values.containsKey(name.lexeme)){
-      if(values.get(name.lexeme).modifiers.contains(TokenType.STATIC)){
-        System.out.println("[WARNING] Accessing static context '" + name.lexeme + "' in global scope in not recommended");
-      }
+    if(values == null){
+      int slot = indexOf(name.lexeme);
+      if(slot != -1) return unbox(getSlot(slot));
+    }
+    else if(values.containsKey(name.lexeme)){
       if(values.get(name.lexeme).value instanceof LoxProperty) {
         LoxProperty property = (LoxProperty) values.get(name.lexeme).value;
         return property.get(interpreter);
@@ -37,9 +85,6 @@ public class Environment {
 
   Field getField(Token name){
     if(values.containsKey(name.lexeme)){
-      if(values.get(name.lexeme).modifiers.contains(TokenType.STATIC)){
-        System.out.println("[WARNING] Accessing static context '" + name.lexeme + "' in global scope in not recommended");
-      }
       return values.get(name.lexeme);
     }
 
@@ -48,31 +93,94 @@ public class Environment {
     throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
   }
 
+  boolean contains(String name){
+    if(values == null) return indexOf(name) != -1;
+    return values.containsKey(name);
+  }
+
   void define(String name, Object value, Modifiers modifiers, LoxType type){
-    LoxType valueType = new LoxType(value);
+    checkType(name, value, type);
+    if(values == null){
+      Interpreter.checkModifiers(modifiers, type, value, name);
+      defineAt(nextSlot(name), name, value);
+      return;
+    }
+    put(name, new Field(value, modifiers, type));
+  }
+
+  static void checkType(String name, Object value, LoxType type){
+    LoxType valueType = LoxType.typeOf(value);
     if(value != null && valueType.mismatch(type)) {
       throw new RuntimeError(new Token(TokenType.IDENTIFIER, "name", value, 0), "Cant assign value of type '" + valueType + "' to variable '"+name+"' of type '" + type + "'");
     }
-    put(name, new Field(value, modifiers, type));
   }
 
   void define(String name, Object value, Modifiers modifiers){
+    if(values == null){
+      defineAt(nextSlot(name), name, value);
+      return;
+    }
     put(name, new Field(value, modifiers, null));
   }
 
-  Object getAt(int distance, String name){
-    Environment environment = ancestor(distance);
-    Field value = environment.values.get(name);
-    return value != null ? value.value : null;
+  void defineAt(int slot, String name, Object value){
+    if(slot >= slots.length){
+      int size = Math.max(slot + 1, slots.length * 2);
+      slots = Arrays.copyOf(slots, Math.max(size, 4));
+      names = Arrays.copyOf(names, slots.length);
+      sharedNames = false;
+    }
+    slots[slot] = value;
+    if(names[slot] == name || name.equals(names[slot])) return;
+    if(sharedNames){
+      names = names.clone();
+      sharedNames = false;
+    }
+    names[slot] = name;
+  }
+
+  Object getSlot(int slot){
+    return slot < slots.length ? slots[slot] : null;
+  }
+
+  void setSlot(int slot, Object value){
+    slots[slot] = value;
+  }
+
+  private static Object unbox(Object value){
+    return value instanceof Cell ? ((Cell)value).value : value;
   }
 
-  Field getFieldAt(int distance, String name){
-    Field value = ancestor(distance).values.get(name);
-    return value != null ? value : null;
+  private int indexOf(String name){
+    for(int i = 0; i < names.length; i++){
+      if(name.equals(names[i])) return i;
+    }
+    return -1;
+  }
+
+  private int nextSlot(String name){
+    int slot = indexOf(name);
+    if(slot != -1) return slot;
+    for(slot = names.length; slot > 0 && names[slot - 1] == null; slot--);
+    return slot;
   }
 
-  void assignAt(int distance, Token name, Object value, Modifiers modifiers, LoxType type){
-    ancestor(distance).put(name.lexeme, new Field(value, modifiers, type));
+  Object getAt(int distance, int slot){
+    Environment environment = this;
+    for (int i = 0; i < distance; i++) {
+      environment = environment.enclosing;
+    }
+    return environment.getSlot(slot);
+  }
+
+  Object getAt(int distance, String name){
+    Environment environment = ancestor(distance);
+    if(environment.values == null){
+      int slot = environment.indexOf(name);
+      return slot != -1 ? unbox(environment.slots[slot]) : null;
+    }
+    Field value = environment.values.get(name);
+    return value != null ? value.value : null;
   }
 
   Environment ancestor(int distance){
@@ -92,24 +200,41 @@ public class Environment {
       if(f.modifiers != null && f.modifiers.contains(TokenType.CONST)){
         throw new RuntimeError(new Token(TokenType.IDENTIFIER, "name", f.value, 0), "Cant assign to constant value '" + name +"'");
       }
-      values.put(name, field);
+      invalidate(f);
     }
-    else{
-      values.put(name, field);
+    values.put(name, field);
+    version++;
+  }
+
+  // Assigns a global through the Field holding it.
+  void set(String name, Field field, Object value){
+    LoxType valueType = LoxType.typeOf(value);
+    if(field.type != null && valueType != null && field.type.mismatch(valueType)) {
+      throw new RuntimeError(new Token(TokenType.IDENTIFIER, "name", value, 0), "Cant assign value of type '" + valueType + "' to variable '"+name+"' of type '" + field.type + "'");
+    }
+    if(field.type != null) Interpreter.checkModifiers(field.modifiers, field.type, value, name);
+    if(field.modifiers != null && field.modifiers.contains(TokenType.CONST)){
+      throw new RuntimeError(new Token(TokenType.IDENTIFIER, "name", field.value, 0), "Cant assign to constant value '" + name +"'");
     }
+    invalidate(field);
+    field.value = value;
+  }
+
+  private static void invalidate(Field field){
+    if(field.value instanceof LoxFunction && ((LoxFunction)field.value).jitLinked || field.value instanceof LoxNative) InlineCache.invalidate();
   }
 
   void assign(Token name, Object value) {
-    Modifiers modifiers = new Modifiers();
-    if (values.containsKey(name.lexeme)) {
-      modifiers = values.get(name.lexeme).modifiers;
-      Field f = new Field(value, modifiers, values.get(name.lexeme).type);
-      LoxType type = values.get(name.lexeme).type;
-      LoxType objType = new LoxType(value);
-      if(type != null && objType != null && type.mismatch(objType)) {
-        throw new RuntimeError(new Token(TokenType.IDENTIFIER, "name", f.value, 0), "Cant assign value of type '" + objType + "' to variable '"+name.lexeme+"' of type '" + type + "'");
+    if(values == null){
+      int slot = indexOf(name.lexeme);
+      if(slot != -1){
+        if(slots[slot] instanceof Cell) ((Cell)slots[slot]).value = value;
+        else slots[slot] = value;
+        return;
       }
-      put(name.lexeme, f);
+    }
+    else if (values.containsKey(name.lexeme)) {
+      set(name.lexeme, values.get(name.lexeme), value);
       return;
     }
 
@@ -46,6 +46,14 @@ abstract class Expr {
     final Token name;
     final Expr value;
     final AssignType type;
+    int depth = -1;
+    int slot = -1;
+    Modifiers modifiers = null;
+    LoxType varType = null;
+    boolean checked = false;
+    boolean boxed = false;
+    Field global = null;
+    int version = -1;
   }
   static class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
@@ -62,6 +70,8 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    BinaryNode node = null;
+    InlineCache cache = null;
   }
   static class Call extends Expr {
     Call(Expr callee, Token paren, List<Expr> arguments, boolean nullCheck, List<Token> templates) {
@@ -82,6 +92,10 @@ abstract class Expr {
     final List<Expr> arguments;
     final boolean nullCheck;
     final List<Token> templates;
+    InlineCache cache = null;
+    Stmt.Function checkedFor = null;
+    Stmt.Function inlinedFrom = null;
+    Expr inlined = null;
   }
   static class Get extends Expr {
     Get(Expr object, Token name) {
@@ -96,6 +110,7 @@ abstract class Expr {
 
     final Expr object;
     final Token name;
+    InlineCache cache = null;
   }
   static class GetIndex extends Expr {
     GetIndex(Expr object, Expr index, Token name) {
@@ -126,6 +141,7 @@ abstract class Expr {
 
     final Expr object;
     final Token name;
+    InlineCache cache = null;
   }
   static class SetAssign extends Expr {
     SetAssign(Expr object, Token name, Expr value) {
@@ -230,6 +246,7 @@ abstract class Expr {
     final Token name;
     final Expr value;
     final Expr index;
+    boolean checked = false;
   }
   static class Super extends Expr {
     Super(Token keyword, Token method) {
@@ -244,6 +261,9 @@ abstract class Expr {
 
     final Token keyword;
     final Token method;
+    int depth = -1;
+    int slot = -1;
+    int thisDepth = -1;
   }
   static class This extends Expr {
     This(Token keyword) {
@@ -256,6 +276,8 @@ abstract class Expr {
     }
 
     final Token keyword;
+    int depth = -1;
+    int slot = -1;
   }
   static class Value extends Expr {
     Value(Token keyword) {
@@ -268,6 +290,8 @@ abstract class Expr {
     }
 
     final Token keyword;
+    int depth = -1;
+    int slot = -1;
   }
   static class Unary extends Expr {
     Unary(Token operator, Expr right) {
@@ -294,6 +318,11 @@ abstract class Expr {
     }
 
     final Token name;
+    int depth = -1;
+    int slot = -1;
+    boolean boxed = false;
+    Field global = null;
+    int version = -1;
   }
   static class New extends Expr {
     New(Token keyword, Expr callee, Token paren, List<Expr> arguments) {
@@ -354,6 +383,8 @@ abstract class Expr {
     final List<Parameter> params;
     final List<Stmt> body;
     final LoxType returnType;
+    List<Expr.Variable> captures = null;
+    int[] cells = null;
   }
   static class Cast extends Expr {
     Cast(Token operator, Expr value, Expr castType) {
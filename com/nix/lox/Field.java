@@ -0,0 +1,17 @@
+package com.nix.lox;
+
+class Field{
+  Object value;
+  final Modifiers modifiers;
+  final LoxType type;
+
+  Field(Object value, Modifiers modifiers, LoxType type){
+    this.value = value;
+    this.modifiers = modifiers;
+    this.type = type;
+  }
+
+  public Object getValue(){
+    return value;
+  }
+}
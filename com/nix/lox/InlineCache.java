@@ -0,0 +1,114 @@
+package com.nix.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-site lookup cache for Get, GetStatic and Call nodes. Each entry maps a
+ * receiver key (an instance's Shape, or a LoxClass) to what the lookup
+ * resolved to; what that means is up to the site: a field slot, a method,
+ * or the class that owns a static field. A site that sees more than
+ * MAX_ENTRIES receivers goes megamorphic and stops caching.
+ */
+class InlineCache {
+  static final int MAX_ENTRIES = 4;
+  // Every site made so far, for --ic-stats. Null otherwise, since the list
+  // would keep each site and its node alive for good.
+  private static List<InlineCache> sites = null;
+
+  // Bumped whenever a class gains a method or field after it was created
+  // (extension methods, new class fields), since any
+  // cached lookup could now resolve somewhere else. Jit compiled code is
+  // dropped on the same signal, and also when a global function it calls
+  // is reassigned.
+  private static int epoch = 0;
+
+  final String kind;
+  final Token name;
+  private final Object[] keys = new Object[MAX_ENTRIES];
+  private final Object[] targets = new Object[MAX_ENTRIES];
+  private final int[] slots = new int[MAX_ENTRIES];
+  private int size = 0;
+  private int siteEpoch = epoch;
+  boolean megamorphic = false;
+  long hits = 0;
+  long misses = 0;
+
+  InlineCache(String kind, Token name){
+    this.kind = kind;
+    this.name = name;
+    if(sites != null) sites.add(this);
+  }
+
+  int find(Object key){
+    if(siteEpoch != epoch){
+      clear();
+      siteEpoch = epoch;
+    }
+    for(int i = 0; i < size; i++){
+      if(keys[i] == key){
+        hits++;
+        return i;
+      }
+    }
+    misses++;
+    return -1;
+  }
+
+  // Returns the new entry, or -1 once the site has gone megamorphic.
+  int add(Object key, int slot, Object target){
+    if(megamorphic) return -1;
+    if(size == MAX_ENTRIES){
+      megamorphic = true;
+      clear();
+      return -1;
+    }
+    keys[size] = key;
+    slots[size] = slot;
+    targets[size] = target;
+    return size++;
+  }
+
+  static void invalidate(){
+    epoch++;
+  }
+
+  static int epoch(){
+    return epoch;
+  }
+
+  int slot(int entry){
+    return slots[entry];
+  }
+
+  Object target(int entry){
+    return targets[entry];
+  }
+
+  private void clear(){
+    for(int i = 0; i < size; i++){
+      keys[i] = null;
+      targets[i] = null;
+    }
+    size = 0;
+  }
+
+  String state(){
+    if(megamorphic) return "megamorphic";
+    if(size <= 1) return "monomorphic";
+    return "polymorphic(" + size + ")";
+  }
+
+  static void recordSites(){
+    sites = new ArrayList<>();
+  }
+
+  static void printStats(){
+    if(sites == null) return;
+    for(InlineCache site : sites){
+      if(site.hits + site.misses == 0) continue;
+      System.err.println("[line " + site.name.line + "] " + site.kind + " '" + site.name.lexeme + "': "
+        + site.hits + " hits, " + site.misses + " misses, " + site.state());
+    }
+  }
+}
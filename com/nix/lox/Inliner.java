@@ -0,0 +1,126 @@
+package com.nix.lox;
+
+import java.util.List;
+
+/**
+ * Inlines small global functions and shared methods into the call sites
+ * that use them. A function qualifies when its whole body is one
+ * 'return' of an expression built from its parameters, globals, literals
+ * and operators, with no calls of its own. A call site qualifies when it
+ * names the function through a global (or a global class, for shared
+ * methods) and passes only literals and variables, which the inlined
+ * expression can read in place of the parameters.
+ *
+ * The interpreter asks for the inlined expression the first time a site
+ * calls a function and uses it from then on, as long as the callee is
+ * still the same declaration. Once a site sees a different function,
+ * because the global was reassigned, it goes back to making real calls.
+ */
+class Inliner {
+  static final int MAX_NODES = 24;
+
+  private final List<Parameter> params;
+  private final List<Expr> arguments;
+  private int nodes = 0;
+
+  private Inliner(List<Parameter> params, List<Expr> arguments){
+    this.params = params;
+    this.arguments = arguments;
+  }
+
+  // The expression to evaluate instead of calling function, or null.
+  static Expr inline(Expr.Call site, LoxFunction function){
+    Stmt.Function declaration = function.declaration;
+    if(declaration == null || !function.direct || function.isInitializer()) return null;
+    if(declaration.hasThis || declaration.extClass != null || declaration.body == null) return null;
+    if(site.nullCheck || !site.templates.isEmpty() || site.arguments.size() != declaration.params.size()) return null;
+    if(!namesGlobal(site.callee, declaration)) return null;
+    for(Expr argument : site.arguments){
+      if(!(argument instanceof Expr.Literal || argument instanceof Expr.Variable || argument instanceof Expr.This)) return null;
+    }
+    if(declaration.body.size() != 1 || !(declaration.body.get(0) instanceof Stmt.Return)) return null;
+    Expr value = ((Stmt.Return)declaration.body.get(0)).value;
+    if(value == null) return null;
+    return new Inliner(declaration.params, site.arguments).copy(value);
+  }
+
+  private static boolean namesGlobal(Expr callee, Stmt.Function declaration){
+    if(callee instanceof Expr.Variable) return ((Expr.Variable)callee).depth == -1;
+    if(callee instanceof Expr.GetStatic && declaration.modifiers.contains(TokenType.STATIC)){
+      Expr object = ((Expr.GetStatic)callee).object;
+      return object instanceof Expr.Variable && ((Expr.Variable)object).depth == -1;
+    }
+    return false;
+  }
+
+  // A fresh copy of expr for the call site, so its caches are the site's
+  // own, with the parameters replaced by the arguments. Null if anything
+  // in it can't be inlined.
+  private Expr copy(Expr expr){
+    if(expr == null || ++nodes > MAX_NODES) return null;
+    if(expr instanceof Expr.Literal) return expr;
+    if(expr instanceof Expr.Variable){
+      Expr.Variable variable = (Expr.Variable)expr;
+      if(variable.depth == -1){
+        Expr.Variable global = new Expr.Variable(variable.name);
+        global.slot = variable.slot;
+        return global;
+      }
+      // Anything else in scope is a parameter of the function itself.
+      if(variable.depth != 0 || variable.slot < 0 || variable.slot >= params.size()) return null;
+      if(!params.get(variable.slot).name.lexeme.equals(variable.name.lexeme)) return null;
+      return arguments.get(variable.slot);
+    }
+    if(expr instanceof Expr.Grouping){
+      Expr inner = copy(((Expr.Grouping)expr).expression);
+      return inner == null ? null : new Expr.Grouping(inner);
+    }
+    if(expr instanceof Expr.Unary){
+      Expr.Unary unary = (Expr.Unary)expr;
+      Expr right = copy(unary.right);
+      return right == null ? null : new Expr.Unary(unary.operator, right);
+    }
+    if(expr instanceof Expr.Binary){
+      Expr.Binary binary = (Expr.Binary)expr;
+      Expr left = copy(binary.left);
+      Expr right = copy(binary.right);
+      return left == null || right == null ? null : new Expr.Binary(left, binary.operator, right);
+    }
+    if(expr instanceof Expr.Logical){
+      Expr.Logical logical = (Expr.Logical)expr;
+      Expr left = copy(logical.left);
+      Expr right = copy(logical.right);
+      return left == null || right == null ? null : new Expr.Logical(left, logical.operator, right);
+    }
+    if(expr instanceof Expr.Ternary){
+      Expr.Ternary ternary = (Expr.Ternary)expr;
+      Expr condition = copy(ternary.condition);
+      Expr thenBranch = copy(ternary.thenBranch);
+      Expr elseBranch = copy(ternary.elseBranch);
+      if(condition == null || thenBranch == null || elseBranch == null) return null;
+      return new Expr.Ternary(ternary.operator, condition, thenBranch, elseBranch);
+    }
+    if(expr instanceof Expr.Get){
+      Expr.Get get = (Expr.Get)expr;
+      Expr object = copy(get.object);
+      return object == null ? null : new Expr.Get(object, get.name);
+    }
+    if(expr instanceof Expr.GetStatic){
+      Expr.GetStatic get = (Expr.GetStatic)expr;
+      Expr object = copy(get.object);
+      return object == null ? null : new Expr.GetStatic(object, get.name);
+    }
+    if(expr instanceof Expr.GetIndex){
+      Expr.GetIndex get = (Expr.GetIndex)expr;
+      Expr object = copy(get.object);
+      Expr index = copy(get.index);
+      return object == null || index == null ? null : new Expr.GetIndex(object, index, get.name);
+    }
+    if(expr instanceof Expr.Length){
+      Expr.Length length = (Expr.Length)expr;
+      Expr value = copy(length.value);
+      return value == null ? null : new Expr.Length(value, length.name);
+    }
+    return null;
+  }
+}
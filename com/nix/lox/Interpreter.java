@@ -2,6 +2,7 @@ package com.nix.lox;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -49,10 +50,22 @@ import com.nix.lox.Stmt.While;
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   public static Interpreter current;
+  boolean specialize = false;
+  Tiers tiers = null;
+  // Loop iterations taken, for the tier profiles. Reaching backEdgeLimit
+  // lets the running function move up a tier from inside its loop.
+  int backEdges = 0;
+  int backEdgeLimit = -1;
+
+  Completion completion = Completion.NORMAL;
+  Object returnValue = null;
 
   final Environment globals = new Environment(this);
   Environment environment = globals;
-  private final Map<Token, Integer> locals = new HashMap<>();
+  // The List, Map and Stream classes, for values made by natives.
+  NativeClass lists;
+  NativeClass maps;
+  NativeClass streams;
 
   Interpreter(){
     defineNativeFunctions();
@@ -128,9 +141,74 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitBinaryExpr(Binary expr) {
+    if(expr.operator.type == TokenType.PLUS && isPlus(expr.left)) return concat(expr);
     Object left = evaluate(expr.left);
     Object right = evaluate(expr.right);
+    if(specialize) return BinaryNode.evaluate(this, expr, left, right);
+    return binary(expr, left, right);
+  }
+
+  private static boolean isPlus(Expr expr) {
+    return expr instanceof Binary && ((Binary)expr).operator.type == TokenType.PLUS;
+  }
+
+  // A chain like a + b + c + d. Once the running value is a string, the
+  // rest of the chain is appended to one Rope rather than making a new
+  // string at every '+'.
+  private Object concat(Binary expr) {
+    Object left = isPlus(expr.left) ? concat((Binary)expr.left) : evaluate(expr.left);
+    Object right = evaluate(expr.right);
+    if(Rope.isString(left) && (Rope.isString(right) || right instanceof Double || right instanceof Boolean)){
+      return Rope.of(left).append(right);
+    }
+    if(specialize) return BinaryNode.evaluate(this, expr, left, right);
+    return binary(expr, left, right);
+  }
+
+  // Operators on instances find their method through the site's cache,
+  // keyed by the receiver's shape like method gets, and call it without
+  // binding it or building an argument list.
+  Object binary(Binary expr, Object left, Object right) {
+    LoxInstance receiver = operatorReceiver(left, right);
+    if(receiver != null){
+      LoxFunction method = operatorMethod(expr, receiver);
+      if(method != null){
+        if(left instanceof Integer) left = (Integer)left+0.0;
+        if(right instanceof Integer) right = (Integer)right+0.0;
+        return method.callOperator(this, receiver, left, right);
+      }
+    }
+    return binary(expr.operator, left, right);
+  }
 
+  // The instance whose operator method binary() would call, if any.
+  private static LoxInstance operatorReceiver(Object left, Object right) {
+    if(left instanceof LoxInstance){
+      if(right instanceof LoxInstance && !((LoxInstance)left).klass.name.equals(((LoxInstance)right).klass.name)) return null;
+      return (LoxInstance)left;
+    }
+    return right instanceof LoxInstance ? (LoxInstance)right : null;
+  }
+
+  // Null when the lookup should go the long way, which also reports
+  // whatever is wrong with the operator.
+  private LoxFunction operatorMethod(Binary expr, LoxInstance receiver) {
+    if(expr.cache == null){
+      expr.cache = new InlineCache("operator", expr.operator);
+    }
+    int entry = expr.cache.find(receiver.shape);
+    if(entry != -1) return (LoxFunction)expr.cache.target(entry);
+
+    String name = methodNameFromOperator(expr.operator.type);
+    if(name == null || receiver.shape.indexOf(name) != -1) return null;
+    LoxFunction method = receiver.klass.lookupMethod(name);
+    if(method == null || method.declaration == null || method.declaration.hasBody == Boolean.FALSE || method.arity() != 2) return null;
+    if(!method.modifiers.contains(TokenType.OPERATOR) || method.modifiers.contains(TokenType.STATIC)) return null;
+    expr.cache.add(receiver.shape, -1, method);
+    return method;
+  }
+
+  Object binary(Token operator, Object left, Object right) {
     if(left instanceof Integer){
       left = (Integer)left+0.0;
     }
@@ -138,23 +216,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       right = (Integer)right+0.0;
     }
 
-    String methodName = methodNameFromOperator(expr.operator.type);
+    String methodName = methodNameFromOperator(operator.type);
     if(left instanceof LoxInstance && right instanceof LoxInstance){
       LoxInstance leftInstance = (LoxInstance)left;
       LoxInstance rightInstance = (LoxInstance)right;
 
       if(leftInstance.klass.name.equals(rightInstance.klass.name)){
-        return callOperator(left, right, true, true, methodName, expr.operator);
+        return callOperator(left, right, true, true, methodName, operator);
       }
     }
     else if (left instanceof LoxInstance && !(right instanceof LoxInstance)){
-      return callOperator(left, right, true, false, methodName, expr.operator);
+      return callOperator(left, right, true, false, methodName, operator);
     }
     else if (right instanceof LoxInstance && !(left instanceof LoxInstance)){
-      return callOperator(left, right, false, true, methodName, expr.operator);
+      return callOperator(left, right, false, true, methodName, operator);
     } 
 
-    switch(expr.operator.type){
+    switch(operator.type){
         case NULL_EQUAL:{
           if(left == null || right == null){
             return null;
@@ -177,40 +255,40 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         case EQUAL_EQUAL: return isEqual(left, right);
 
         case GREATER:
-          checkNumberOperands(expr.operator, left, right);
+          checkNumberOperands(operator, left, right);
           return (double)left > (double)right;
         case GREATER_EQUAL:
-          checkNumberOperands(expr.operator, left, right);
+          checkNumberOperands(operator, left, right);
           return (double)left >= (double)right;
         case LESS:
-          checkNumberOperands(expr.operator, left, right);
+          checkNumberOperands(operator, left, right);
           return (double)left < (double)right;
         case LESS_EQUAL:
-          checkNumberOperands(expr.operator, left, right);
+          checkNumberOperands(operator, left, right);
           return (double)left <= (double)right;
 
         case MINUS:
-          checkNumberOperands(expr.operator, left, right);
+          checkNumberOperands(operator, left, right);
           return (double)left - (double)right;
         case PLUS:
           if (left instanceof Double && right instanceof Double) {
             return (double)left + (double)right;
           } 
           else {
-            return left.toString() + right.toString();
+            return Rope.concat(left, right);
           }
           case SLASH:
-          checkNumberOperands(expr.operator, left, right);
+          checkNumberOperands(operator, left, right);
           return (double)left / (double)right;
         case STAR:
-          checkNumberOperands(expr.operator, left, right);
+          checkNumberOperands(operator, left, right);
           return (double)left * (double)right;
       default:
         break;
         }
     return null;
   }      
-          //throw new RuntimeError(expr.operator, "Operands must be two numbers or strings");
+          //throw new RuntimeError(operator, "Operands must be two numbers or strings");
         
 
   @Override
@@ -226,12 +304,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Object visitUnaryExpr(Unary expr) {
     Object right = evaluate(expr.right);
+    return unary(expr.operator, right);
+  }
 
-    switch (expr.operator.type){
+  Object unary(Token operator, Object right) {
+    switch (operator.type){
       case BANG:
         return !isTruthy(right);
       case MINUS:
-        checkNumberOperand(expr.operator, right);
+        checkNumberOperand(operator, right);
         return -(double)right;
       default:
         break;
@@ -250,17 +331,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     throw new RuntimeError(operator, "Operand must be a number");
   }
 
-  private boolean isTruthy(Object object) {
+  static boolean isTruthy(Object object) {
     if(object == null) return false;
     if(object instanceof Boolean) return (boolean)object;
     return true;
   }
 
-  private boolean isEqual(Object a, Object b) {
+  static boolean isEqual(Object a, Object b) {
     if(a == null && b == null) return true;
     if(a == null) return false;
 
-    return a.equals(b);
+    return Rope.flatten(a).equals(Rope.flatten(b));
   }
 
   private Object evaluate(Expr expr) {
@@ -271,20 +352,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     try{
       for(Stmt statement : statements){
         execute(statement);
+        completion = Completion.NORMAL;
       }
     } catch(RuntimeError e){
       Lox.runtimeError(e);
     }
   }
 
-  private void execute(Stmt stmt) {
+  void execute(Stmt stmt) {
     stmt.accept(this);
   }
 
-  void resolve(Token expr, int depth){
-    locals.put(expr, depth);
-  }
-
   @Override
   public Void visitExpressionStmt(Expression stmt) {
     evaluate(stmt.expression);
@@ -299,13 +377,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   private static void checkByte(Modifiers modifiers, LoxType type, Object value, String s) {
     if(value instanceof LoxProperty) {
       Object val = ((LoxProperty)value).get(Interpreter.current);
-      checkByte(modifiers, new LoxType(val), val, s);
+      checkByte(modifiers, LoxType.typeOf(val), val, s);
       return;
     }
     if(type.type == TypeEnum.NUMBER && modifiers.contains(TokenType.BYTE)) {
       if(value instanceof LoxArray) {
         LoxArray array = (LoxArray)value;
-        for(Object o : array.values()) {
+        for(int i = 0; i < array.getSize(); i++) {
+          Object o = array.get(i);
           if((Double)o > 255 || (Double)o < 0) {
             throw new RuntimeError(new Token(TokenType.BYTE, "byte", null, 0), "Can't assign value outside of byte range to byte array '" + s + "'");
           }
@@ -320,13 +399,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   private static void checkUnsigned(Modifiers modifiers, LoxType type, Object value, String s) {
     if(value instanceof LoxProperty) {
       Object val = ((LoxProperty)value).get(Interpreter.current);
-      checkUnsigned(modifiers, new LoxType(val), val, s);
+      checkUnsigned(modifiers, LoxType.typeOf(val), val, s);
       return;
     }
     if(value instanceof LoxArray) {
       LoxArray array = (LoxArray)value;
-      for(Object o : array.values()) {
-        checkUnsigned(modifiers, new LoxType(o), o, s);
+      for(int i = 0; i < array.getSize(); i++) {
+        Object o = array.get(i);
+        checkUnsigned(modifiers, LoxType.typeOf(o), o, s);
       }
       return;
     }
@@ -352,189 +432,212 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Void visitVarStmt(Var stmt) {
     Object value = null;
+    // Closures in the initializer can capture the variable already.
+    if(stmt.boxed) environment.defineAt(stmt.slot, stmt.name.lexeme, new Environment.Cell(null));
     if(stmt.initializer != null) {
       value = evaluate(stmt.initializer);
     }
     else{
       value = defaultValue(stmt.type);
     }
+    declareVar(stmt, value);
+    return null;
+  }
+
+  void declareVar(Var stmt, Object value) {
     if(environment.enclosing == null && stmt.modifiers.contains(TokenType.STATIC)) {
       throw new RuntimeError(stmt.name, "Cannot declare static variable in global scope");
     }
-    checkModifiers(stmt, value, stmt.name.lexeme);
-    environment.define(stmt.name.lexeme, value, stmt.modifiers, stmt.type);
-    return null;
+    if(stmt.slot != -1){
+      if(!stmt.checked){
+        checkModifiers(stmt, value, stmt.name.lexeme);
+        Environment.checkType(stmt.name.lexeme, value, stmt.type);
+      }
+      if(stmt.boxed) ((Environment.Cell)environment.getSlot(stmt.slot)).value = value;
+      else environment.defineAt(stmt.slot, stmt.name.lexeme, value);
+    }
+    else{
+      checkModifiers(stmt, value, stmt.name.lexeme);
+      environment.define(stmt.name.lexeme, value, stmt.modifiers, stmt.type);
+    }
+  }
+
+  private void define(int slot, Token name, Object value, Modifiers modifiers) {
+    if(slot != -1) environment.defineAt(slot, name.lexeme, value);
+    else environment.define(name.lexeme, value, modifiers);
   }
 
   @Override
   public Object visitVariableExpr(Variable expr) {
-    return lookUpVariable(expr.name, expr);
+    if(expr.depth == -1) return global(expr);
+    Object value = environment.getAt(expr.depth, expr.slot);
+    return expr.boxed ? ((Environment.Cell)value).value : value;
   }
 
-  private Object lookUpVariable(Token name, Expr expr) {
-    Integer distance = locals.get(name);
-    if(distance != null){
-      return environment.getAt(distance, name.lexeme);
-    } else {
-      return globals.get(name);
+  // A global read through the Field the site found it in, which stays good
+  // until some global is declared again.
+  Object global(Variable expr) {
+    if(expr.version != globals.version){
+      expr.global = globals.values.get(expr.name.lexeme);
+      expr.version = globals.version;
     }
+    Field field = expr.global;
+    if(field == null) return globals.get(expr.name);
+    if(field.value instanceof LoxProperty) return ((LoxProperty)field.value).get(this);
+    return field.value;
   }
 
-  boolean functionExists(String name){
-    return environment.values.get(name) != null;
-  }
-
-  boolean globalFunctionExists(String name){
-    return environment.values.get(name) != null;
+  private Object lookUpVariable(Token name, int depth, int slot) {
+    if(depth != -1){
+      return environment.getAt(depth, slot);
+    } else {
+      return globals.get(name);
+    }
   }
 
   @Override
   public Object visitAssignExpr(Assign expr) {
     Object right = evaluate(expr.value);
-    Modifiers modifiers = Modifiers.empty();
-    modifiers = environment.values.get(expr.name.lexeme) != null ? environment.values.get(expr.name.lexeme).modifiers : null;
-    LoxType type = environment.values.get(expr.name.lexeme) != null ? environment.values.get(expr.name.lexeme).type : null;
-    Integer distance = locals.get(expr.name);
-
-    boolean hasObject = distance != null ? 
-      environment.getAt(distance, expr.name.lexeme) != null : environment.get(expr.name) != null;
-
-    if(hasObject){
-      boolean leftIsDouble = false;
-      boolean rightIsDouble = false;
-      Object left = null;
-      left = distance != null ? environment.getAt(distance, expr.name.lexeme) : environment.get(expr.name);
-      if(left != null) {
-        Field f = distance != null ? environment.getFieldAt(distance, expr.name.lexeme) : environment.getField(expr.name);
-        if(f.value instanceof LoxProperty) {
-          LoxProperty property = (LoxProperty) f.value;
-          left = property;
-          ArrayList<Object> args = new ArrayList<>();
-          args.add(right);
-          if(property.getSet() != null) property.value = property.set(this, args);
-          else throw new RuntimeError(expr.name, "Cannot assign to property '" + expr.name.lexeme + "' because it is read-only");
-
-          if(distance != null){
-            environment.assignAt(distance, expr.name, property, modifiers, type);
-          } else {
-            globals.assign(expr.name, property);
-          }
-          return right;
-        }
+    if(expr.depth == -1) return assignGlobal(expr, right);
+
+    Environment scope = environment.ancestor(expr.depth);
+    Object left = scope.getSlot(expr.slot);
+    Environment.Cell cell = expr.boxed ? (Environment.Cell)left : null;
+    if(cell != null) left = cell.value;
+    if(left instanceof LoxProperty) {
+      setProperty((LoxProperty)left, expr.name, right);
+      return right;
+    }
+    if(left != null){
+      // What's stored has to keep the variable's type, not what's added to it.
+      right = compoundAssign(expr.type, left, right);
+      if(!expr.checked && !validAssignment(left, right)){
+        Lox.error(new Token(TokenType.EQUAL, left.toString(), 0, 0), "Not a valid assignment");
+        return null;
+      }
+    }
+
+    if(expr.modifiers != null && expr.modifiers.contains(TokenType.CONST)){
+      throw new RuntimeError(new Token(TokenType.IDENTIFIER, "name", left, 0), "Cant assign to constant value '" + expr.name.lexeme +"'");
+    }
+    if(expr.varType != null) checkModifiers(expr.modifiers, expr.varType, right, expr.name.lexeme);
+    if(cell != null) cell.value = right;
+    else scope.setSlot(expr.slot, right);
+    return right;
+  }
+
+  Object assignGlobal(Assign expr, Object right) {
+    if(expr.version != globals.version){
+      expr.global = globals.values.get(expr.name.lexeme);
+      expr.version = globals.version;
+    }
+    Field field = expr.global;
+    if(field == null) return globals.get(expr.name);
+    Object left = field.value instanceof LoxProperty ? ((LoxProperty)field.value).get(this) : field.value;
+    if(left != null){
+      if(field.value instanceof LoxProperty) {
+        setProperty((LoxProperty)field.value, expr.name, right);
+        globals.set(expr.name.lexeme, field, field.value);
+        return right;
       }
 
+      right = compoundAssign(expr.type, left, right);
       if(!validAssignment(left, right)){
         Lox.error(new Token(TokenType.EQUAL, left.toString(), 0, 0), "Not a valid assignment");
         return null;
       }
-      int leftD = 0;
-      int rightD = 0;
-      String leftS = "";
-      String rightS = "";
+    }
 
-      if(notSpecialAssignment(expr.type)){
-        if(right instanceof Double){
-          rightIsDouble = true;
-          rightD = (int)((double)right);
+    globals.set(expr.name.lexeme, field, right);
+    return right;
+  }
+
+  private void setProperty(LoxProperty property, Token name, Object value) {
+    ArrayList<Object> args = new ArrayList<>();
+    args.add(value);
+    if(property.getSet() != null) property.value = property.set(this, args);
+    else throw new RuntimeError(name, "Cannot assign to property '" + name.lexeme + "' because it is read-only");
+  }
+
+  // The value x op= y, x++ or x-- stores. Numbers stay full doubles, so
+  // whole numbers are exact up to 2^53 instead of wrapping at 2^31, and a
+  // string on either side of += appends just like +.
+  Object compoundAssign(AssignType assignType, Object left, Object right) {
+    if(assignType == AssignType.SET) return right;
+    if(left instanceof Double){
+      double a = (Double)left;
+      switch(assignType){
+        case INCREMENT: return a + 1;
+        case DECREMENT: return a - 1;
+        default: break;
+      }
+      if(right instanceof Double){
+        double b = (Double)right;
+        switch(assignType){
+          case ADD: return a + b;
+          case SUBTRACT: return a - b;
+          case MULTIPLY: return a * b;
+          case DIVIDE: return a / b;
+          case POWER: return Math.pow(a, b);
+          default: break;
         }
-        else{
-          rightS = right.toString();
+      }
+    }
+
+    boolean leftIsNumber = left instanceof Double || left instanceof Integer;
+    boolean rightIsNumber = right instanceof Double || right instanceof Integer;
+    double a = leftIsNumber ? ((Number)left).doubleValue() : 0;
+    double b = rightIsNumber ? ((Number)right).doubleValue() : 0;
+    switch (assignType){
+      case ADD:{
+        if(leftIsNumber && rightIsNumber) return a + b;
+        return Rope.concat(left, right);
+      }
+      case INCREMENT:{
+        if(!leftIsNumber){
+          throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only increment numbers");
         }
+        return a + 1;
       }
-      if(left instanceof Double){
-        leftIsDouble = true;
-        leftD = (int)((double)left);
+      case DECREMENT:{
+        if(!leftIsNumber){
+          throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only increment numbers");
+        }
+        return a - 1;
       }
-      else{
-        leftS = left.toString();
+      case SUBTRACT:{
+        if(!(leftIsNumber && rightIsNumber)){
+          throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only subtract numbers");
+        }
+        return a - b;
       }
-      
-      boolean special = distance != null ? (environment.getAt(distance, expr.name.lexeme) != null
-       || globals.getAt(distance, expr.name.lexeme) != null) : (environment.get(expr.name) != null || globals.get(expr.name) != null);
-
-      if(special){
-        
-        switch (expr.type){
-          case ADD:{
-            if(leftIsDouble && rightIsDouble){
-              right = leftD + rightD;
-            }
-            else if(leftIsDouble && !rightIsDouble){
-              right = leftD + rightS;
-            }
-            else if(!leftIsDouble && rightIsDouble){
-              right = leftS + rightD;
-            }
-            else{
-              right = leftS + rightS;
-            }
-            break;
-          }
-          case INCREMENT:{
-            if(!(leftIsDouble)){
-              throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only increment numbers");
-            }
-            right = (double)leftD + 1;
-            break;
-          }
-          case SUBTRACT:{
-            if(!(leftIsDouble && rightIsDouble)){
-              throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only subtract numbers");
-            }
-            right = (double)(leftD - rightD);
-            break;
-          }
-          case DECREMENT:{
-            if(!(leftIsDouble)){
-              throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only increment numbers");
-            }
-            right = (double)leftD - 1;
-            break;
-          }
-          case MULTIPLY:{
-            if(!(leftIsDouble && rightIsDouble)){
-              throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only multiply numbers");
-            }
-            right = (double)(leftD * rightD);
-            break;
-          }
-          case POWER:{
-            if(!(leftIsDouble && rightIsDouble)){
-              throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only exponent numbers");
-            }
-            right = (double)(Math.pow(leftD, rightD));
-            break;
-          }
-          case DIVIDE:{
-            if(!(leftIsDouble && rightIsDouble)){
-              throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only divide numbers");
-            }
-            right = (double)(leftD / rightD);
-            break;
-          }
-          default:
-            break;
+      case MULTIPLY:{
+        if(!(leftIsNumber && rightIsNumber)){
+          throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only multiply numbers");
         }
+        return a * b;
       }
-    
-    }
-    
-    if(distance != null){
-      environment.assignAt(distance, expr.name, right, modifiers, type);
-    } else {
-      globals.assign(expr.name, right);
+      case POWER:{
+        if(!(leftIsNumber && rightIsNumber)){
+          throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only exponent numbers");
+        }
+        return Math.pow(a, b);
+      }
+      case DIVIDE:{
+        if(!(leftIsNumber && rightIsNumber)){
+          throw new RuntimeError(new Token(TokenType.INCREMENT, left.toString(), left, 0), "Can only divide numbers");
+        }
+        return a / b;
+      }
+      default:
+        break;
     }
-
     return right;
   }
 
-  public boolean notSpecialAssignment(AssignType type){
-    return type != AssignType.INCREMENT && type != AssignType.DECREMENT;
-  }
-
   public boolean validAssignment(Object left, Object right){
-    LoxType leftType = new LoxType(left);
-    LoxType rightType = new LoxType(right);
+    LoxType leftType = LoxType.typeOf(left);
+    LoxType rightType = LoxType.typeOf(right);
     return leftType.matches(rightType);
   }
 
@@ -551,6 +654,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
       for(Stmt stmt : statements){
         execute(stmt);
+        if(completion != Completion.NORMAL) break;
       }
     }finally{
        this.environment = previous;
@@ -571,7 +675,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Void visitTestStmt(Stmt.Test stmt) {
     Object name = evaluate(stmt.name);
-    if(!(name instanceof String)) throw new RuntimeError(new Token(TokenType.OBJECT, name.toString(), name, 0), "Test name must be a string");
+    if(!Rope.isString(name)) throw new RuntimeError(new Token(TokenType.OBJECT, name.toString(), name, 0), "Test name must be a string");
     try{
       execute(stmt.body);
     }
@@ -597,36 +701,135 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       if(!isTruthy(left)) return left;
     }
     else if (expr.operator.type == TokenType.IS){
-      LoxType leftType = new LoxType(left);
       Object right = evaluate(expr.right);
-      LoxType rightType = new LoxType(right);
-      if(right instanceof LoxType) {
-        rightType = (LoxType)right;
-      }
-      return leftType.matches(rightType);
+      return is(left, right);
     }
 
     return evaluate(expr.right);
   }
 
+  boolean is(Object left, Object right) {
+    LoxType rightType = right instanceof LoxType ? (LoxType)right : LoxType.typeOf(right);
+    return LoxType.typeOf(left).is(rightType);
+  }
+
   @Override
   public Void visitWhileStmt(While stmt) {
     while(isTruthy(evaluate(stmt.condition))){
-      try{
-        execute(stmt.body);
+      if(++backEdges == backEdgeLimit) tiers.loop();
+      execute(stmt.body);
+      if(completion == Completion.NORMAL) continue;
+      if(completion == Completion.RETURN) break;
+
+      boolean broke = completion == Completion.BREAK;
+      completion = Completion.NORMAL;
+      if(broke) break;
+    }
+
+    return null;
+  }
+
+  @Override
+  public Void visitForEachStmt(Stmt.ForEach stmt) {
+    Object iterable = evaluate(stmt.iterable);
+    Environment previous = environment;
+    try{
+      environment = new Environment(previous, this);
+      execute(stmt.variable);
+
+      // Lists, maps, arrays and strings are walked in place, without an
+      // iterator object.
+      LoxList list = LoxList.of(iterable);
+      LoxMap map = LoxMap.of(iterable);
+      if(list != null){
+        for(int i = 0; i < list.size(); i++){
+          if(!iterate(stmt, list.at(i))) break;
+        }
       }
-      catch (com.nix.lox.Break b){
-        break;
+      else if(map != null){
+        try{
+          for(Object key : map.keySet()){
+            if(!iterate(stmt, key)) break;
+          }
+        }
+        catch(ConcurrentModificationException e){
+          throw new RuntimeError(stmt.keyword, "Map changed while looping over it");
+        }
+      }
+      else if(iterable instanceof LoxArray){
+        LoxArray array = (LoxArray)iterable;
+        for(int i = 0; i < array.getSize(); i++){
+          if(!iterate(stmt, array.get(i))) break;
+        }
+      }
+      else if(iterable instanceof CharSequence){
+        CharSequence string = (CharSequence)iterable;
+        for(int i = 0; i < string.length(); i++){
+          if(!iterate(stmt, string.charAt(i))) break;
+        }
+      }
+      else if(iterable instanceof LoxInstance){
+        iterateObject(stmt, (LoxInstance)iterable);
+      }
+      else{
+        throw new RuntimeError(stmt.keyword, "Can only loop over a list, map, array, string or object with an iterator, not '" + LoxType.typeOf(iterable) + "'");
       }
     }
-
+    finally{
+      environment = previous;
+    }
     return null;
   }
 
+  // An object is looped over through what its iterator() returns, or
+  // itself when it has no iterator(), by calling hasNext() and next().
+  private void iterateObject(Stmt.ForEach stmt, LoxInstance instance) {
+    List<Object> none = new ArrayList<>(0);
+    List<LoxClass> templates = new ArrayList<>(0);
+    Object source = instance;
+    LoxFunction iterator = instance.klass.findMethod("iterator", false);
+    if(iterator != null) source = iterator.bind(instance, this).call(this, none, templates);
+    if(!(source instanceof LoxInstance)){
+      throw new RuntimeError(stmt.keyword, "iterator() must return an object, not '" + LoxType.typeOf(source) + "'");
+    }
+    LoxFunction hasNext = iteratorMethod(stmt, (LoxInstance)source, "hasNext");
+    LoxFunction next = iteratorMethod(stmt, (LoxInstance)source, "next");
+    while(isTruthy(hasNext.call(this, none, templates))){
+      if(!iterate(stmt, next.call(this, none, templates))) break;
+    }
+  }
+
+  private LoxFunction iteratorMethod(Stmt.ForEach stmt, LoxInstance source, String name) {
+    LoxFunction method = source.klass.findMethod(name, false);
+    if(method == null){
+      throw new RuntimeError(stmt.keyword, "Object of type '" + source.klass.name + "' can't be looped over, it has no method '" + name + "'");
+    }
+    return method.bind(source, this);
+  }
+
+  // Runs the loop body with the variable set to element. False once the
+  // loop should stop.
+  private boolean iterate(Stmt.ForEach stmt, Object element) {
+    if(++backEdges == backEdgeLimit) tiers.loop();
+    Var variable = stmt.variable;
+    // A fresh box each time, so functions made in the body keep their own.
+    if(variable.boxed) environment.setSlot(variable.slot, new Environment.Cell(null));
+    declareVar(variable, element);
+    execute(stmt.body);
+    if(completion == Completion.NORMAL) return true;
+    if(completion == Completion.RETURN) return false;
+
+    boolean broke = completion == Completion.BREAK;
+    completion = Completion.NORMAL;
+    return !broke;
+  }
+
   @Override
   public Void visitWhenStmt(Stmt.When stmt) {
     while(!isTruthy(evaluate(stmt.condition))){
+      if(++backEdges == backEdgeLimit) tiers.loop();
       execute(stmt.thenBranch);
+      if(completion != Completion.NORMAL) return null;
     }
     if(stmt.finallyBranch != null){
       execute(stmt.finallyBranch);
@@ -636,13 +839,56 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitCallExpr(Call expr) {
-    Object callee = evaluate(expr.callee);
+    return call(expr, false);
+  }
+
+  // A tail call into a Lox function isn't made here: the function is
+  // handed back, with its arguments, for the caller's frame to run.
+  private Object call(Call expr, boolean tail) {
+    Object callee;
+    LoxInstance receiver = null;
+    if(expr.callee instanceof Get){
+      // Method calls take the receiver straight into the callee's frame
+      // instead of binding a copy of the method first.
+      Get get = (Get)expr.callee;
+      Object object = evaluate(get.object);
+      int entry = object instanceof LoxInstance ? lookup((LoxInstance)object, get) : -1;
+      if(entry != -1 && get.cache.slot(entry) == -1){
+        callee = get.cache.target(entry);
+        receiver = (LoxInstance)object;
+      }
+      else{
+        callee = get(object, get);
+      }
+    }
+    else{
+      callee = evaluate(expr.callee);
+    }
     if(expr.nullCheck){
       if(callee == null){
         return null;
       }
     }
 
+    if(callee instanceof LoxFunction && expr.templates.isEmpty()){
+      LoxFunction function = (LoxFunction)callee;
+      if(function.declaration == expr.inlinedFrom){
+        if(expr.inlined != null) return callInlined(expr, function);
+      }
+      else if(expr.inlinedFrom == null){
+        // The first call goes through normally; later ones use the inlined body.
+        expr.inlinedFrom = function.declaration;
+        expr.inlined = Inliner.inline(expr, function);
+      }
+      else{
+        // The global was reassigned, or the site calls more than one function.
+        expr.inlined = null;
+      }
+      if(receiver == null) receiver = function.receiver;
+      if(tail && function.direct && !function.isInitializer()) return tailCall(expr, function, receiver);
+      return callDirect(expr, function, receiver);
+    }
+
     List<Object> arguments = new ArrayList<>();
     for(Expr argument : expr.arguments){
       arguments.add(evaluate(argument));
@@ -650,7 +896,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     List<LoxClass> generics = new ArrayList<>();
     for(Token generic : expr.templates){
-      Object value = lookUpVariable(generic, expr);
+      Object value = globals.get(generic);
       if(value instanceof LoxClass){
         generics.add((LoxClass)value);
       }
@@ -659,8 +905,100 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       }
     }
 
+    return call(expr, callee, arguments, generics);
+  }
+
+  private Object tailCall(Call expr, LoxFunction function, LoxInstance receiver) {
+    List<Object> arguments = new ArrayList<>(expr.arguments.size());
+    for(Expr argument : expr.arguments){
+      arguments.add(evaluate(argument));
+    }
+    checkArity(expr.paren, function, arguments.size());
+    boolean checked = expr.checkedFor != null && expr.checkedFor == function.declaration;
+    return new LoxFunction.TailCall(function, receiver, arguments, checked);
+  }
+
+  private Object callInlined(Call expr, LoxFunction function) {
+    if(expr.checkedFor != function.declaration){
+      for(int i = 0; i < expr.arguments.size(); i++){
+        function.checkParameter(i, evaluate(expr.arguments.get(i)));
+      }
+    }
+    Object value = evaluate(expr.inlined);
+    if(!function.declaration.returnChecked) function.checkReturn(value);
+    return value;
+  }
+
+  private Object callDirect(Call expr, LoxFunction function, LoxInstance receiver) {
+    List<Expr> args = expr.arguments;
+    // The type checker proved the arguments against this declaration.
+    boolean checked = expr.checkedFor != null && expr.checkedFor == function.declaration;
+    switch(args.size()){
+      case 0:
+        checkArity(expr.paren, function, 0);
+        return function.call0(this, receiver);
+      case 1: {
+        Object a = evaluate(args.get(0));
+        checkArity(expr.paren, function, 1);
+        return function.call1(this, receiver, a, checked);
+      }
+      case 2: {
+        Object a = evaluate(args.get(0));
+        Object b = evaluate(args.get(1));
+        checkArity(expr.paren, function, 2);
+        return function.call2(this, receiver, a, b, checked);
+      }
+      default: {
+        List<Object> arguments = new ArrayList<>(args.size());
+        for(Expr argument : args){
+          arguments.add(evaluate(argument));
+        }
+        checkArity(expr.paren, function, arguments.size());
+        return function.callN(this, receiver, arguments, checked);
+      }
+    }
+  }
+
+  private void checkArity(Token paren, LoxCallable function, int count) {
+    if(count != function.arity()){
+      throw new RuntimeError(paren, "Expected " +
+          function.arity() + " arguments but got " +
+          count + ".");
+    }
+  }
+
+  // Class calls cache the resolved constructor per class at the call site.
+  Object call(Call expr, Object callee, List<Object> arguments, List<LoxClass> generics) {
+    if(!(callee instanceof LoxClass)) return call(expr.paren, callee, arguments, generics);
+    if(expr.cache == null){
+      Token name = expr.callee instanceof Variable ? ((Variable)expr.callee).name : expr.paren;
+      expr.cache = new InlineCache("new", name);
+    }
+
+    LoxClass klass = (LoxClass)callee;
+    LoxFunction initializer;
+    int entry = expr.cache.find(klass);
+    if(entry != -1){
+      initializer = (LoxFunction)expr.cache.target(entry);
+    }
+    else{
+      initializer = klass.findMethod("constructor", false);
+      expr.cache.add(klass, -1, initializer);
+    }
+
+    int arity = initializer == null ? 0 : initializer.arity();
+    if(arguments.size() != arity){
+      throw new RuntimeError(expr.paren, "Expected " +
+          arity + " arguments but got " +
+          arguments.size() + ".");
+    }
+    boolean checked = initializer != null && expr.checkedFor == initializer.declaration;
+    return klass.instantiate(this, arguments, generics, initializer, checked);
+  }
+
+  Object call(Token paren, Object callee, List<Object> arguments, List<LoxClass> generics) {
     if(!(callee instanceof LoxCallable)){
-      throw new RuntimeError(expr.paren, "Can only call functions and class constructors, not '" + callee + "'");
+      throw new RuntimeError(paren, "Can only call functions and class constructors, not '" + callee + "'");
     }
 
     // if(callee instanceof LoxInstance) {
@@ -673,7 +1011,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     LoxCallable function = (LoxCallable)callee;
     if(arguments.size() != function.arity()){
-      throw new RuntimeError(expr.paren, "Expected " +
+      throw new RuntimeError(paren, "Expected " +
           function.arity() + " arguments but got " +
           arguments.size() + ".");
     }
@@ -687,15 +1025,18 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitFunctionStmt(Function stmt) {
-    LoxFunction function = new LoxFunction(stmt, environment, false, stmt.returnType, stmt.modifiers);
+    Environment closure = closure(stmt.captures);
+    LoxFunction function = new LoxFunction(stmt, closure, false, stmt.returnType, stmt.modifiers);
     if(stmt.extClass == null) {
-      environment.define(function.getName(), function, function.modifiers);
+      define(stmt.slot, stmt.name, function, function.modifiers);
+      // After defining it, so a function that calls itself captures itself.
+      if(stmt.captures != null) capture(stmt.captures, closure);
     }
     else{
       Object var = environment.get(stmt.extClass);
       if(var != null){
         if(var instanceof LoxClass){
-          ((LoxClass)var).methods.put(function.getName(), function);
+          ((LoxClass)var).putMethod(function.getName(), function);
         }
         else{
           throw new RuntimeError(stmt.name, "Cannot extend non-class '" + stmt.extClass.lexeme + "'");
@@ -712,9 +1053,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Void visitReturnStmt(Return stmt) {
     Object value = null;
-    if(stmt.value != null) value = evaluate(stmt.value);
+    if(stmt.tailCall != null) value = call(stmt.tailCall, true);
+    else if(stmt.value != null) value = evaluate(stmt.value);
 
-    throw new com.nix.lox.Return(value);
+    returnValue = value;
+    completion = Completion.RETURN;
+    return null;
   }
 
   public void checkParameters(Stmt.Function func, Stmt.Function template) {
@@ -743,12 +1087,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
   
-    environment.define(stmt.name.lexeme, stmt.name, Modifiers.empty());
+    define(stmt.slot, stmt.name, stmt.name, Modifiers.empty());
 
     environment = new Environment(environment, this);
-    environment.define("super", superclass, Modifiers.empty());
-    for(Token type : stmt.templates) {
-      environment.define(type.lexeme, new LoxObject(environment, current, type.lexeme, null), Modifiers.empty(), new LoxType("any", TypeEnum.ANY));
+    environment.defineAt(0, "this", null);
+    environment.defineAt(1, "super", superclass);
+    for(int i = 0; i < stmt.templates.size(); i++) {
+      Token type = stmt.templates.get(i);
+      environment.defineAt(i + 2, type.lexeme, new LoxObject(environment, current, type.lexeme, null));
     }
 
 
@@ -783,8 +1129,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     for (Stmt.Var var : stmt.variables) {
       Object value = evaluate(var.initializer);
-      if(new LoxType(value).mismatch(var.type)){
-        throw new RuntimeError(var.name, "Variable '"+var.name.lexeme+"' must be of type '"+var.type.name+"', got '"+new LoxType(value).name+"'");
+      if(LoxType.typeOf(value).mismatch(var.type)){
+        throw new RuntimeError(var.name, "Variable '"+var.name.lexeme+"' must be of type '"+var.type.name+"', got '"+LoxType.typeOf(value).name+"'");
       }
       Field f = new Field(value, var.modifiers, var.type);
       checkModifiers(f, var.name.lexeme);
@@ -849,6 +1195,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     LoxClass klass = new LoxClass(environment, stmt.name.lexeme, (LoxClass)superclass, methods, fields, this);
     klass.templates = stmt.templates;
+    if(superclass != null) klass.type().inherit(((LoxClass)superclass).type());
+    if(stmt.interfase != null) {
+      for(Token interfaseToken : stmt.interfase) {
+        klass.type().inherit(LoxType.of(TypeEnum.OBJECT, interfaseToken.lexeme));
+      }
+    }
 
     if(environment.enclosing != null){
       environment = environment.enclosing;
@@ -859,7 +1211,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       klass.superClass = new LoxObject(environment, this, stmt.name.lexeme, klass);
     }
 
-    environment.assign(stmt.name, klass);
+    if(stmt.slot != -1) environment.setSlot(stmt.slot, klass);
+    else environment.assign(stmt.name, klass);
     return null;
   }
 
@@ -890,7 +1243,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitInterfaceStmt(Stmt.Interface inter){
-    environment.define(inter.name.lexeme, inter.name, Modifiers.empty());
+    define(inter.slot, inter.name, inter.name, Modifiers.empty());
 
     environment = new Environment(environment, this);
 
@@ -911,14 +1264,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       environment = environment.enclosing;
     }
 
-    environment.assign(inter.name, i);
+    if(inter.slot != -1) environment.setSlot(inter.slot, i);
+    else environment.assign(inter.name, i);
 
     return null;
   }
 
   @Override
   public Void visitEnumStmt(Stmt.Enum stmt){
-    environment.define(stmt.name.lexeme, stmt.name, Modifiers.empty());
+    define(stmt.slot, stmt.name, stmt.name, Modifiers.empty());
 
     environment = new Environment(environment, this);
 
@@ -934,7 +1288,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       environment = environment.enclosing;
     }
 
-    environment.assign(stmt.name, i);
+    if(stmt.slot != -1) environment.setSlot(stmt.slot, i);
+    else environment.assign(stmt.name, i);
 
     return null;
   }
@@ -942,6 +1297,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Void visitSwitchStmt(Switch stmt) {
     Object value = evaluate(stmt.value);
+    if(stmt.table == null || !enumsHold(stmt.table)) stmt.table = switchTable(stmt);
+    if(stmt.table != SwitchTable.SEQUENTIAL){
+      int index = stmt.table.find(value);
+      if(index != -1){
+        execute(stmt.cases.get(index).body);
+      }
+      else if(stmt.defaultCase != null && !stmt.cases.isEmpty()){
+        execute(stmt.defaultCase.body);
+      }
+      return null;
+    }
     for(int i = 0; i < stmt.cases.size(); i++){
       Stmt.Case c = stmt.cases.get(i);
       if(isEqual(value, evaluate(c.value))){
@@ -959,12 +1325,54 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     return null;
   }
 
+  // Literal and enum element cases can't change, so they are worked out
+  // once and looked up by value from then on.
+  private SwitchTable switchTable(Switch stmt) {
+    List<Object> values = new ArrayList<>();
+    List<Expr> enumNames = new ArrayList<>();
+    List<Object> enums = new ArrayList<>();
+    for(Stmt.Case c : stmt.cases){
+      if(c.value instanceof Literal){
+        values.add(((Literal)c.value).value);
+        continue;
+      }
+      if(!(c.value instanceof GetStatic) || !(((GetStatic)c.value).object instanceof Variable)) return SwitchTable.SEQUENTIAL;
+      GetStatic get = (GetStatic)c.value;
+      Object object = evaluate(get.object);
+      if(!(object instanceof LoxEnum)) return SwitchTable.SEQUENTIAL;
+      try{
+        values.add(((LoxEnum)object).getValue(get.name));
+      }
+      catch(RuntimeException e){
+        // Left to fail when, and if, the case is reached.
+        return SwitchTable.SEQUENTIAL;
+      }
+      if(!enums.contains(object)){
+        enumNames.add(get.object);
+        enums.add(object);
+      }
+    }
+    SwitchTable table = SwitchTable.of(values);
+    table.enumNames = enumNames.toArray(new Expr[0]);
+    table.enums = enums.toArray();
+    return table;
+  }
+
+  private boolean enumsHold(SwitchTable table) {
+    for(int i = 0; i < table.enums.length; i++){
+      if(evaluate(table.enumNames[i]) != table.enums[i]) return false;
+    }
+    return true;
+  }
+
   private void defineNativeClasses() {
     defineSystem();
     defineObject();
     defineMath();
     defineList();
     defineMap();
+    defineArrays();
+    defineStream();
   }
 
   private void defineMath() {
@@ -977,15 +1385,39 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
    private void defineList() {
     environment.define("List", null, Modifiers.empty());
 
-    LoxList list = new LoxList(environment, this, null);
-    environment.assign(new Token(TokenType.CLASS, "List", null, -1), list);
+    lists = new NativeClass("List", LoxList.class, environment, this) {
+      @Override
+      LoxInstance create() {
+        return new LoxList(this, interpreter);
+      }
+    };
+    environment.assign(new Token(TokenType.CLASS, "List", null, -1), lists);
   }
 
   private void defineMap() {
     environment.define("Map", null, Modifiers.empty());
 
-    LoxMap Map = new LoxMap(environment, this, null);
-    environment.assign(new Token(TokenType.CLASS, "Map", null, -1), Map);
+    maps = new NativeClass("Map", LoxMap.class, environment, this) {
+      @Override
+      LoxInstance create() {
+        return new LoxMap(this, interpreter);
+      }
+    };
+    environment.assign(new Token(TokenType.CLASS, "Map", null, -1), maps);
+  }
+
+  private void defineArrays() {
+    environment.define("Array", null, Modifiers.empty());
+
+    LoxArrays arrays = new LoxArrays(environment, this, null);
+    environment.assign(new Token(TokenType.CLASS, "Array", null, -1), arrays);
+  }
+
+  private void defineStream() {
+    environment.define("Stream", null, Modifiers.empty());
+
+    streams = new LoxStream.StreamClass(environment, this);
+    environment.assign(new Token(TokenType.CLASS, "Stream", null, -1), streams);
   }
 
   public void defineSystem(){
@@ -1004,64 +1436,104 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Object visitGetExpr(Get expr) {
     Object object = evaluate(expr.object);
+    return get(object, expr);
+  }
+
+  Object get(Object object, Get expr) {
+    if(!(object instanceof LoxInstance)) return get(object, expr.name);
+
+    LoxInstance instance = (LoxInstance)object;
+    int entry = lookup(instance, expr);
+    if(entry == -1) return instance.get(expr.name, false);
+    int slot = expr.cache.slot(entry);
+    if(slot != -1) return instance.getSlot(slot);
+    return ((LoxFunction)expr.cache.target(entry)).bind(instance, this);
+  }
+
+  // Instance gets cache, per shape, either the field slot or the unbound
+  // method the name resolved to. -1 means the site can't use the cache and
+  // the caller should do the full lookup.
+  private int lookup(LoxInstance instance, Get expr) {
+    if(expr.cache == null) expr.cache = new InlineCache("get", expr.name);
+    int entry = expr.cache.find(instance.shape);
+    if(entry != -1) return entry;
+
+    int slot = instance.shape.indexOf(expr.name.lexeme);
+    if(slot != -1) return expr.cache.add(instance.shape, slot, null);
+    LoxFunction method = instance.klass.lookupMethod(expr.name.lexeme);
+    // Static methods warn on every instance access, so they stay uncached.
+    if(method == null || method.modifiers.contains(TokenType.STATIC)) return -1;
+    return expr.cache.add(instance.shape, -1, method);
+  }
+
+  Object get(Object object, Token name) {
     if(object instanceof LoxInstance){
-      return ((LoxInstance)object).get(expr.name, false);
+      return ((LoxInstance)object).get(name, false);
     }
 
-    throw new RuntimeError(expr.name, "Only instances have properties");
+    throw new RuntimeError(name, "Only instances have properties");
   }
 
   @Override
   public Object visitCoalesceExpr(Expr.Coalesce expr){
     Object object = evaluate(expr.object);
+    return coalesce(object, expr.name);
+  }
+
+  Object coalesce(Object object, Token name) {
     if(object instanceof LoxInstance){
-      return ((LoxInstance)object).get(expr.name, false);
+      return ((LoxInstance)object).get(name, false);
     }
     else if(object instanceof LoxClass){
-      return ((LoxClass)object).findMethod(expr.name.lexeme, true);
+      return ((LoxClass)object).findMethod(name.lexeme, true);
     }
     else if(object == null){
       return null;
     }
-    throw new RuntimeError(expr.name, "Only instances have properties");
+    throw new RuntimeError(name, "Only instances have properties");
   }
 
   @Override
   public Object visitSetExpr(Set expr) {
     Object object = evaluate(expr.object);
+    if(!(object instanceof LoxInstance) && !(object instanceof LoxClass)){
+      throw new RuntimeError(expr.name, "Only instances and objects have fields");
+    }
 
+    Object value = evaluate(expr.value);
+    return set(object, expr.name, value);
+  }
+
+  Object set(Object object, Token name, Object value) {
     if(!(object instanceof LoxInstance)){
       if(object instanceof LoxClass){
-        Object value = evaluate(expr.value);
-        ((LoxClass)object).set(expr.name.lexeme, value);
+        ((LoxClass)object).set(name.lexeme, value);
         return value;
       }
       else{
-        throw new RuntimeError(expr.name, "Only instances and objects have fields");
+        throw new RuntimeError(name, "Only instances and objects have fields");
       } 
     }
 
-    Object value = evaluate(expr.value);
-    ((LoxInstance)object).set(expr.name, value);
+    ((LoxInstance)object).set(name, value);
     return value;
   }
 
   @Override
   public Object visitThisExpr(This expr) {
-    return lookUpVariable(expr.keyword, expr);
+    return lookUpVariable(expr.keyword, expr.depth, expr.slot);
   }
 
   @Override
   public Object visitValueExpr(Value expr) {
-    return lookUpVariable(expr.keyword, expr);
+    return lookUpVariable(expr.keyword, expr.depth, expr.slot);
   }
 
   @Override
   public Object visitSuperExpr(Super expr) {
-    int distance = locals.get(expr.keyword);
-    LoxClass superclass = (LoxClass)environment.getAt(distance, "super");
+    LoxClass superclass = (LoxClass)environment.getAt(expr.depth, expr.slot);
 
-    LoxInstance object = (LoxInstance)environment.getAt(distance-1, "this");
+    LoxInstance object = (LoxInstance)environment.getAt(expr.thisDepth, 0);
 
     LoxFunction method = superclass.findMethod(expr.method.lexeme, false);
 
@@ -1078,23 +1550,54 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Object visitGetStaticExpr(GetStatic expr) {
     Object object = evaluate(expr.object);
+    return getStatic(object, expr);
+  }
+
+  // Class gets cache, per class, either the shared method or the class that
+  // owns the shared field, skipping the superclass walk.
+  Object getStatic(Object object, GetStatic expr) {
+    if(!(object instanceof LoxClass)) return getStatic(object, expr.name);
+    if(expr.cache == null) expr.cache = new InlineCache("static", expr.name);
+
+    LoxClass klass = (LoxClass)object;
+    int entry = expr.cache.find(klass);
+    if(entry != -1){
+      Object target = expr.cache.target(entry);
+      if(target instanceof LoxClass){
+        Object val = ((LoxClass)target).fields.get(expr.name.lexeme).value;
+        if(val instanceof LoxProperty) {
+          return ((LoxProperty)val).get(this);
+        }
+        return val;
+      }
+      return target;
+    }
+
+    Object value = getStatic(object, expr.name);
+    LoxClass owner = klass.fieldOwner(expr.name.lexeme);
+    if(owner != null) expr.cache.add(klass, -1, owner);
+    else if(value != null) expr.cache.add(klass, -1, value);
+    return value;
+  }
+
+  Object getStatic(Object object, Token name) {
     if(object instanceof LoxClass){
-      if(((LoxClass)object).findField(expr.name.lexeme, true) != null){
-        Object val = ((LoxClass)object).findField(expr.name.lexeme, true).value;
+      if(((LoxClass)object).findField(name.lexeme, true) != null){
+        Object val = ((LoxClass)object).findField(name.lexeme, true).value;
         if(val instanceof LoxProperty) {
           return ((LoxProperty)val).get(this);
         }
         return val;
       }
       else{
-        return ((LoxClass)object).findMethod(expr.name.lexeme, true);
+        return ((LoxClass)object).findMethod(name.lexeme, true);
       }
     }
     else if(object instanceof LoxEnum) {
-      return ((LoxEnum)object).getValue(expr.name);
+      return ((LoxEnum)object).getValue(name);
     }
 
-    throw new RuntimeError(expr.name, "Can only get shared values from a class or enum");
+    throw new RuntimeError(name, "Can only get shared values from a class or enum");
   }
 
 
@@ -1118,12 +1621,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitBreakStmt(Break stmt) {
-    throw new com.nix.lox.Break();
+    completion = Completion.BREAK;
+    return null;
   }
 
   @Override
   public Void visitContinueStmt(Stmt.Continue stmt) {
-    throw new com.nix.lox.Continue();
+    completion = Completion.CONTINUE;
+    return null;
   }
 
   @Override
@@ -1148,19 +1653,34 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Object visitTypeofExpr(Expr.Typeof stmt) {
     Object value = evaluate(stmt.value);
-    return new LoxType(value);
+    return LoxType.typeOf(value);
   }
 
 
 
   @Override
   public Object visitAnonymousFunctionExpr(Expr.AnonymousFunction expr) {
-    environment = new Environment(environment, this);
-    LoxFunction lf = new LoxFunction(expr, environment, expr.returnType, new Modifiers(TokenType.ANONYMOUS));
-    if(environment.enclosing != null) {
-      environment = environment.enclosing;
+    Environment closure = closure(expr.captures);
+    if(expr.captures != null) capture(expr.captures, closure);
+    return new LoxFunction(expr, closure, expr.returnType, new Modifiers(TokenType.ANONYMOUS));
+  }
+
+  // The environment a function closes over: the scope chain when it isn't
+  // flat, the globals when it captures nothing, so it still counts as a
+  // global function, and otherwise one holding just its captures.
+  private Environment closure(List<Variable> captures) {
+    if(captures == null) return environment;
+    if(captures.isEmpty()) return globals;
+    return new Environment(globals, this, captures.size());
+  }
+
+  // Fills a flat closure's environment with what it captures, as the
+  // Resolver laid it out: values, or the Cells of locals that change.
+  private void capture(List<Variable> captures, Environment closure) {
+    for(int i = 0; i < captures.size(); i++){
+      Variable source = captures.get(i);
+      closure.defineAt(i, source.name.lexeme, environment.getAt(source.depth, source.slot));
     }
-    return lf;
   }
 
   public String UpperFirstLetter(String s) {
@@ -1192,15 +1712,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Object visitCastExpr(Cast expr) {
     Object castee = evaluate(expr.value);
-    LoxType original = new LoxType(castee);
     Object typeObject = evaluate(expr.castType);
-    if(!(typeObject instanceof LoxType)) throw new RuntimeError(expr.operator, "Cannot cast '" + original + "' to '" + typeObject + "'");
+    return cast(castee, typeObject, expr.operator);
+  }
+
+  Object cast(Object castee, Object typeObject, Token operator) {
+    LoxType original = LoxType.typeOf(castee);
+    if(!(typeObject instanceof LoxType)) throw new RuntimeError(operator, "Cannot cast '" + original + "' to '" + typeObject + "'");
     LoxType type = (LoxType)typeObject;
 
     if(original.isObject()) {
       if(castee instanceof LoxInstance) {
         LoxInstance instance = (LoxInstance)castee;
-        return callCastMethod(instance, type, expr.operator);
+        return callCastMethod(instance, type, operator);
       }
     }
     else{
@@ -1209,14 +1733,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
           case STRING:
             return castee.toString();
           case NUMBER: {
-              if(castee instanceof String) {
-                return Double.parseDouble((String)castee);
+              if(Rope.isString(castee)) {
+                return Double.parseDouble(castee.toString());
               }
               return (double)castee;
             }
           case BOOLEAN: {
-              if(castee instanceof String) {
-                return Boolean.parseBoolean((String)castee);
+              if(Rope.isString(castee)) {
+                return Boolean.parseBoolean(castee.toString());
               }
               return (boolean)castee;
             }
@@ -1228,10 +1752,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
       }
       catch (Exception e) {
-        throw new RuntimeError(expr.operator, "Cannot cast '" + original + "' to '" + type + "'");
+        throw new RuntimeError(operator, "Cannot cast '" + original + "' to '" + type + "'");
       }
     }
-    throw new RuntimeError(expr.operator, "Cannot cast '" + original + "' to '" + type + "'");
+    throw new RuntimeError(operator, "Cannot cast '" + original + "' to '" + type + "'");
   }
 
   public LoxProperty property(Property stmt) {
@@ -1260,13 +1784,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     LoxProperty property = new LoxProperty(stmt.name, stmt.modifiers, stmt.type, getter, setter);
     property.value = value;
 
-    environment.define(stmt.name.lexeme, property, stmt.modifiers, new LoxType(property));
+    if(stmt.slot != -1) environment.defineAt(stmt.slot, stmt.name.lexeme, property);
+    else environment.define(stmt.name.lexeme, property, stmt.modifiers, LoxType.typeOf(property));
     return null;
   }
 
 
 
-  private Object defaultValue(LoxType type) {
+  static Object defaultValue(LoxType type) {
     if(type.name.contains("[]")) {
       return new LoxArray(type, 0);
     }
@@ -1296,25 +1821,29 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitArrayExpr(Array expr) {
-    LoxType type = expr.type != null ? expr.type : new LoxType(evaluate(expr.values.get(0)));
+    List<Object> values = new ArrayList<>();
+    for(int i = 0; i < expr.values.size(); i++) {
+        values.add(evaluate(expr.values.get(i)));
+    }
+    Object size = expr.size != null ? evaluate(expr.size) : null;
+    return array(expr.type, values, size);
+  }
+
+  Object array(LoxType elementType, List<Object> values, Object sizeObj) {
+    LoxType type = elementType != null ? elementType : LoxType.typeOf(values.get(0));
     Object defVal = defaultValue(type);
-    type.name+="[]";
+    type = LoxType.of(type.type, type.name + "[]");
     int size = 0;
-    if(expr.size != null) {
-      size = (int)((double)evaluate(expr.size));
+    if(sizeObj != null) {
+      size = (int)((double)sizeObj);
     }
     else{
-      size = expr.values.size();
+      size = values.size();
     }
     LoxArray array = new LoxArray(type, size);
 
-    List<Object> values = new ArrayList<>();
-    if(expr.size == null) {
-      for(int i = 0; i < expr.values.size(); i++) {
-          values.add(evaluate(expr.values.get(i)));
-      }
-    }
-    else {
+    if(sizeObj != null) {
+      values = new ArrayList<>();
       for(int i = 0; i < size; i++) {
         values.add(defVal);
       }
@@ -1340,25 +1869,32 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return method.callFunction(this, args, operator, new ArrayList<>(0));
       }
     }
-    throw new RuntimeError(name, "Object of type '" + new LoxType(obj).name + "' does not define method '" + methodName + "'");
+    throw new RuntimeError(name, "Object of type '" + LoxType.typeOf(obj).name + "' does not define method '" + methodName + "'");
   }
 
   @Override
   public Object visitGetIndexExpr(GetIndex expr) {
     Object arrayObj  = evaluate(expr.object);
     Object indexObj = evaluate(expr.index);
+    return getIndex(arrayObj, indexObj, expr.name);
+  }
+
+  Object getIndex(Object arrayObj, Object indexObj, Token name) {
     if(!(indexObj instanceof Double)) {
-      throw new RuntimeError(expr.name, "index operator can only take a number");
+      throw new RuntimeError(name, "index operator can only take a number");
     }
     double index = Math.round((double)indexObj);
     if(!(arrayObj instanceof LoxArray)) {
       if(arrayObj instanceof String) {
         return ((String)arrayObj).charAt((int)index);
       }
+      else if(arrayObj instanceof Rope) {
+        return ((Rope)arrayObj).charAt((int)index);
+      }
       else{
         ArrayList<Object> args = new ArrayList<>();
         args.add(index);
-        return callMethodOnObject(expr.name, "getAt", args, arrayObj, true);
+        return callMethodOnObject(name, "getAt", args, arrayObj, true);
       }
     }
     
@@ -1373,23 +1909,32 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     Object arrayObj  = evaluate(expr.object);
     Object indexObj = evaluate(expr.index);
     Object valueObj = evaluate(expr.value);
+    return setIndex(arrayObj, indexObj, valueObj, expr.name, expr.checked);
+  }
+
+  Object setIndex(Object arrayObj, Object indexObj, Object valueObj, Token name) {
+    return setIndex(arrayObj, indexObj, valueObj, name, false);
+  }
+
+  Object setIndex(Object arrayObj, Object indexObj, Object valueObj, Token name, boolean checked) {
     if(!(indexObj instanceof Double)) {
       if(indexObj instanceof Integer) {
         indexObj = (double)((int)indexObj);
       }
-      else throw new RuntimeError(expr.name, "Can only set number index of an array");
+      else throw new RuntimeError(name, "Can only set number index of an array");
     }
     double index = Math.round((double)indexObj);
     if(!(arrayObj instanceof LoxArray)) {
       ArrayList<Object> args = new ArrayList<>();
       args.add(index);
       args.add(valueObj);
-      return callMethodOnObject(expr.name, "setAt", args, arrayObj, true);
+      return callMethodOnObject(name, "setAt", args, arrayObj, true);
     }
     
     LoxArray array = (LoxArray)arrayObj;
 
-    array.set((int)index, valueObj);
+    if(checked) array.put((int)index, valueObj);
+    else array.set((int)index, valueObj);
     return valueObj;
   }
 
@@ -1398,9 +1943,16 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Object visitLengthExpr(Length expr) {
     Object obj = evaluate(expr.value);
+    return length(obj, expr.name);
+  }
+
+  Object length(Object obj, Token name) {
     if(obj instanceof String) {
       return ((String)obj).length();
     }
+    else if(obj instanceof Rope) {
+      return ((Rope)obj).length();
+    }
     else if(obj instanceof LoxArray) {
       return ((LoxArray)obj).getSize();
     }
@@ -1410,12 +1962,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         LoxFunction method = instance.klass.findMethod("getSize", false);
         if(method != null) {
           if(method.returnType.type != TypeEnum.NUMBER) {
-            throw new RuntimeError(expr.name, "Object of type '" + new LoxType(obj).name + "' does not have a length");
+            throw new RuntimeError(name, "Object of type '" + LoxType.typeOf(obj).name + "' does not have a length");
           }
           return method.bind(instance, this).callFunction(this, new ArrayList<>(), false, new ArrayList<>());
         }
       }
-      throw new RuntimeError(expr.name, "Object of type '" + new LoxType(obj).name + "' does not have a length");
+      throw new RuntimeError(name, "Object of type '" + LoxType.typeOf(obj).name + "' does not have a length");
     }
   }
 
@@ -1439,22 +1991,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     try{
       execute(stmt.tryBranch);
     }
-    catch (com.nix.lox.Break b){
-      throw b;
-    }
-    catch (com.nix.lox.Continue c){
-      throw c;
-    }
-    catch (com.nix.lox.Return r){
-      throw r;
-    }
-    catch (com.nix.lox.Expect e){
-      throw e;
-    }
     catch (com.nix.lox.RuntimeError e) {
       if(stmt.catchBranch != null){
         environment = new Environment(environment, this);
-        environment.define(stmt.exName.lexeme, e.getMessage(), new Modifiers(TokenType.CONST));
+        environment.defineAt(0, stmt.exName.lexeme, e.getMessage());
         executeBlock(stmt.catchBranch, environment);
         environment = environment.enclosing;
       }
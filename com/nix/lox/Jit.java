@@ -0,0 +1,176 @@
+package com.nix.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The compiled tier. {@link Tiers} hands it a hot function; the function
+ * and the global functions it calls are compiled by {@link JitCompiler}
+ * into one hidden class, and later calls jump straight into it, where
+ * HotSpot optimizes them like any other Java code.
+ *
+ * Compiled code assumes each global function it calls still holds the
+ * function it was linked against. Reassigning one of them, or anything
+ * else that invalidates the inline caches (extension methods, members
+ * added to a class), throws the compiled code away.
+ */
+class Jit {
+  private final Interpreter interpreter;
+  private final Tiers tiers;
+  private int units = 0;
+
+  Jit(Interpreter interpreter, Tiers tiers){
+    this.interpreter = interpreter;
+    this.tiers = tiers;
+  }
+
+  // Thrown by compiled code that runs off the end of a function that has
+  // to return a value. member is the function's index in its unit, which
+  // the Compiled the call came in through turns into the real error.
+  static class MissingReturn extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    final int member;
+
+    MissingReturn(int member){
+      super(null, null, false, false);
+      this.member = member;
+    }
+  }
+
+  static class Compiled {
+    private final MethodHandle handle;
+    private final MethodHandle spread;
+    private final Class<?>[] params;
+    private final int epoch;
+    private final Tiers tiers;
+    // The functions compiled into the same class, by index.
+    private final List<LoxFunction> unit;
+
+    Compiled(MethodHandle handle, int epoch, Tiers tiers, List<LoxFunction> unit){
+      this.params = handle.type().parameterArray();
+      this.handle = handle.asType(MethodType.genericMethodType(params.length));
+      this.spread = this.handle.asSpreader(Object[].class, params.length);
+      this.epoch = epoch;
+      this.tiers = tiers;
+      this.unit = unit;
+    }
+
+    // The compiled code only takes the exact types it was compiled for.
+    // Anything else, including arguments that would fail their parameter
+    // check, sends the function back to the interpreter.
+    private boolean fits(LoxFunction function, int i, Object value){
+      if(Tiers.kindOf(value) == params[i]) return true;
+      tiers.deoptimize(function, "argument " + (i + 1) + " was " + LoxType.typeOf(value).name);
+      return false;
+    }
+
+    private boolean valid(LoxFunction function){
+      if(epoch == InlineCache.epoch()) return true;
+      tiers.deoptimize(function, "a function it calls was reassigned or a class changed");
+      return false;
+    }
+
+    boolean accepts(LoxFunction function){
+      return valid(function);
+    }
+
+    boolean accepts(LoxFunction function, Object a){
+      return valid(function) && fits(function, 0, a);
+    }
+
+    boolean accepts(LoxFunction function, Object a, Object b){
+      return valid(function) && fits(function, 0, a) && fits(function, 1, b);
+    }
+
+    boolean accepts(LoxFunction function, List<Object> arguments){
+      if(!valid(function)) return false;
+      for(int i = 0; i < arguments.size(); i++){
+        if(!fits(function, i, arguments.get(i))) return false;
+      }
+      return true;
+    }
+
+    Object call(){
+      try{
+        return (Object)handle.invokeExact();
+      }
+      catch(Throwable e){
+        throw rethrow(e);
+      }
+    }
+
+    Object call(Object a){
+      try{
+        return (Object)handle.invokeExact(a);
+      }
+      catch(Throwable e){
+        throw rethrow(e);
+      }
+    }
+
+    Object call(Object a, Object b){
+      try{
+        return (Object)handle.invokeExact(a, b);
+      }
+      catch(Throwable e){
+        throw rethrow(e);
+      }
+    }
+
+    Object call(List<Object> arguments){
+      try{
+        return (Object)spread.invokeExact(arguments.toArray());
+      }
+      catch(Throwable e){
+        throw rethrow(e);
+      }
+    }
+
+    private RuntimeException rethrow(Throwable e){
+      if(e instanceof MissingReturn) return unit.get(((MissingReturn)e).member).missingReturn();
+      if(e instanceof RuntimeException) return (RuntimeException)e;
+      if(e instanceof Error) throw (Error)e;
+      return new IllegalStateException(e);
+    }
+  }
+
+  // Returns false if function, or something it calls, can't be compiled.
+  boolean compile(LoxFunction function){
+    List<LoxFunction> unit = new ArrayList<>();
+    unit.add(function);
+    ClassWriter writer = new ClassWriter("com/nix/lox/JitCode$" + units++);
+    int epoch = InlineCache.epoch();
+    try{
+      for(int i = 0; i < unit.size(); i++){
+        JitCompiler.compile(interpreter, writer, unit, i);
+      }
+      MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(writer.toBytes(), true);
+      for(int i = 0; i < unit.size(); i++){
+        LoxFunction member = unit.get(i);
+        member.jitLinked = true;
+        if(member.compiled != null && member.compiled.epoch == epoch) continue;
+        MethodType type = MethodType.methodType(JitCompiler.returnKind(member), JitCompiler.paramKinds(member));
+        member.compiled = new Compiled(lookup.findStatic(lookup.lookupClass(), JitCompiler.methodName(unit, i), type), epoch, tiers, unit);
+        tiers.compiled(member, function);
+      }
+      return true;
+    }
+    catch(JitCompiler.Unsupported e){
+      return false;
+    }
+    catch(ReflectiveOperationException e){
+      return false;
+    }
+    catch(LinkageError e){
+      // Rejected by the verifier; keep interpreting rather than fail the script.
+      return false;
+    }
+  }
+
+  static RuntimeException missingReturn(int member){
+    return new MissingReturn(member);
+  }
+}
@@ -0,0 +1,770 @@
+package com.nix.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nix.lox.LoxType.TypeEnum;
+
+import static com.nix.lox.ClassWriter.*;
+
+/**
+ * Compiles one Lox function into a static JVM method for the {@link Jit}.
+ * num values live in double locals and bool values in int locals, so only
+ * code whose every value is one of the two can be compiled; anything else
+ * throws {@link Unsupported} and the function stays in the tree-walker.
+ * Compound assignments keep the interpreter's int truncation, and '+='
+ * (which can turn a number into a string) is never compiled.
+ */
+class JitCompiler implements Expr.Visitor<Class<?>>, Stmt.Visitor<Void> {
+  static class Unsupported extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Unsupported(){
+      super(null, null, false, false);
+    }
+  }
+
+  private static class Local {
+    final String name;
+    final Class<?> type;
+    final int index;
+    final int depth;
+    final boolean fixed;
+
+    Local(String name, Class<?> type, int index, int depth, boolean fixed){
+      this.name = name;
+      this.type = type;
+      this.index = index;
+      this.depth = depth;
+      this.fixed = fixed;
+    }
+  }
+
+  private static class Loop {
+    final Loop enclosing;
+    final int start;
+    final List<Integer> breaks = new ArrayList<>();
+
+    Loop(Loop enclosing, int start){
+      this.enclosing = enclosing;
+      this.start = start;
+    }
+  }
+
+  private final Interpreter interpreter;
+  private final ClassWriter writer;
+  private final List<LoxFunction> unit;
+  private final LoxFunction function;
+  private final Class<?> returnType;
+  private final ClassWriter.Code code;
+  private final List<Local> locals = new ArrayList<>();
+  private int nextLocal = 0;
+  private int scopeDepth = 0;
+  private Loop loop = null;
+
+  private JitCompiler(Interpreter interpreter, ClassWriter writer, List<LoxFunction> unit, LoxFunction function){
+    this.interpreter = interpreter;
+    this.writer = writer;
+    this.unit = unit;
+    this.function = function;
+    this.returnType = returnKind(function);
+    int slots = 0;
+    for(Class<?> param : paramKinds(function)){
+      slots += size(param);
+    }
+    this.code = new ClassWriter.Code(slots);
+  }
+
+  // Compiles unit.get(index) into writer. Calls to global functions add the
+  // callee to the unit so the whole call graph lands in one class.
+  static void compile(Interpreter interpreter, ClassWriter writer, List<LoxFunction> unit, int index){
+    LoxFunction function = unit.get(index);
+    if(!compilable(interpreter, function)) throw new Unsupported();
+    new JitCompiler(interpreter, writer, unit, function).compileFunction(index);
+  }
+
+  static boolean compilable(Interpreter interpreter, LoxFunction function){
+    Stmt.Function declaration = function.declaration;
+    return function.direct && function.closure == interpreter.globals && function.receiver == null
+      && !declaration.hasThis && declaration.extClass == null && !function.isInitializer();
+  }
+
+  static String methodName(List<LoxFunction> unit, int index){
+    return unit.get(index).declaration.name.lexeme + "$" + index;
+  }
+
+  static String descriptor(LoxFunction function){
+    String descriptor = "(";
+    for(Class<?> param : paramKinds(function)){
+      descriptor += letter(param);
+    }
+    return descriptor + ")" + letter(returnKind(function));
+  }
+
+  static Class<?> kind(LoxType type){
+    if(type == null || type.name.contains("[]")) throw new Unsupported();
+    LoxType primitive = type.intern();
+    if(primitive == LoxType.NUMBER) return double.class;
+    if(primitive == LoxType.BOOLEAN) return boolean.class;
+    throw new Unsupported();
+  }
+
+  // Whatever is declared 'any' takes the one kind the profile has seen.
+  private static Class<?> kind(LoxType type, Class<?> seen){
+    if(type == null || type.type != TypeEnum.ANY) return kind(type);
+    if(seen != double.class && seen != boolean.class) throw new Unsupported();
+    return seen;
+  }
+
+  static Class<?>[] paramKinds(LoxFunction function){
+    Tiers.Profile profile = Tiers.profile(function);
+    List<Parameter> params = function.declaration.params;
+    Class<?>[] kinds = new Class<?>[params.size()];
+    for(int i = 0; i < kinds.length; i++){
+      kinds[i] = kind(params.get(i).type, profile.args[i]);
+    }
+    return kinds;
+  }
+
+  static Class<?> returnKind(LoxFunction function){
+    LoxType type = function.declaration.returnType;
+    if(type != null && type.type == TypeEnum.VOID) return void.class;
+    return kind(type, Tiers.profile(function).returned);
+  }
+
+  private static String letter(Class<?> type){
+    if(type == double.class) return "D";
+    if(type == boolean.class) return "Z";
+    return "V";
+  }
+
+  private static int size(Class<?> type){
+    return type == double.class ? 2 : 1;
+  }
+
+  private void compileFunction(int index){
+    Stmt.Function declaration = function.declaration;
+    Class<?>[] params = paramKinds(function);
+    for(int i = 0; i < params.length; i++){
+      addLocal(declaration.params.get(i).name.lexeme, params[i], false);
+    }
+    for(Stmt statement : declaration.body){
+      compile(statement);
+    }
+    if(returnType == void.class){
+      code.emit(RETURN);
+    }
+    else{
+      code.emit(LDC_W, writer.intConstant(index));
+      code.invoke(writer.methodRef("com/nix/lox/Jit", "missingReturn", "(I)Ljava/lang/RuntimeException;"), "(I)Ljava/lang/RuntimeException;");
+      code.emit(ATHROW);
+    }
+    writer.method(methodName(unit, index), descriptor(function), code);
+  }
+
+  private void compile(Stmt stmt){
+    code.stack = 0;
+    stmt.accept(this);
+  }
+
+  private Class<?> compile(Expr expr){
+    return expr.accept(this);
+  }
+
+  private void expect(Class<?> type, Class<?> expected){
+    if(type != expected) throw new Unsupported();
+  }
+
+  private void beginScope(){
+    scopeDepth++;
+  }
+
+  private void endScope(){
+    scopeDepth--;
+    while(!locals.isEmpty() && locals.get(locals.size() - 1).depth > scopeDepth){
+      nextLocal = locals.remove(locals.size() - 1).index;
+    }
+  }
+
+  private Local addLocal(String name, Class<?> type, boolean fixed){
+    Local local = new Local(name, type, nextLocal, scopeDepth, fixed);
+    nextLocal += size(type);
+    locals.add(local);
+    return local;
+  }
+
+  private Local resolveLocal(String name){
+    for(int i = locals.size() - 1; i >= 0; i--){
+      if(locals.get(i).name.equals(name)) return locals.get(i);
+    }
+    return null;
+  }
+
+  private void load(Local local){
+    code.emit(local.type == double.class ? DLOAD : ILOAD, local.index);
+  }
+
+  private void store(Local local){
+    code.emit(local.type == double.class ? DSTORE : ISTORE, local.index);
+  }
+
+  private void patch(List<Integer> jumps){
+    for(int jump : jumps){
+      code.patchJump(jump);
+    }
+  }
+
+  // Emits jumps taken when expr evaluates to 'when' and falls through
+  // otherwise. Returns the jumps to patch.
+  private List<Integer> jumpIf(Expr expr, boolean when){
+    List<Integer> jumps = new ArrayList<>();
+    if(expr instanceof Expr.Grouping){
+      return jumpIf(((Expr.Grouping)expr).expression, when);
+    }
+    if(expr instanceof Expr.Literal && ((Expr.Literal)expr).value instanceof Boolean){
+      if((Boolean)((Expr.Literal)expr).value == when) jumps.add(code.emitJump(GOTO));
+      return jumps;
+    }
+    if(expr instanceof Expr.Unary && ((Expr.Unary)expr).operator.type == TokenType.BANG){
+      return jumpIf(((Expr.Unary)expr).right, !when);
+    }
+    if(expr instanceof Expr.Logical){
+      Expr.Logical logical = (Expr.Logical)expr;
+      boolean and = logical.operator.type == TokenType.AND;
+      if(!and && logical.operator.type != TokenType.OR) throw new Unsupported();
+      // 'a and b' is false as soon as a is, 'a or b' true as soon as a is.
+      if(and != when){
+        jumps.addAll(jumpIf(logical.left, when));
+        jumps.addAll(jumpIf(logical.right, when));
+      }
+      else{
+        List<Integer> skip = jumpIf(logical.left, !when);
+        jumps.addAll(jumpIf(logical.right, when));
+        patch(skip);
+      }
+      return jumps;
+    }
+    if(expr instanceof Expr.Binary){
+      Expr.Binary binary = (Expr.Binary)expr;
+      int op = compare(binary, when);
+      if(op != -1){
+        jumps.add(code.emitJump(op));
+        return jumps;
+      }
+    }
+    expect(compile(expr), boolean.class);
+    jumps.add(code.emitJump(when ? IFNE : IFEQ));
+    return jumps;
+  }
+
+  // Leaves what a comparison needs on the stack and returns the jump taken
+  // when it comes out as 'when', or -1 if expr isn't a comparison. NaN
+  // compares false like in Java.
+  private int compare(Expr.Binary expr, boolean when){
+    TokenType operator = expr.operator.type;
+    switch(operator){
+      case LESS:
+      case LESS_EQUAL:
+      case GREATER:
+      case GREATER_EQUAL:
+        expect(compile(expr.left), double.class);
+        expect(compile(expr.right), double.class);
+        boolean less = operator == TokenType.LESS || operator == TokenType.LESS_EQUAL;
+        code.emit(less ? DCMPG : DCMPL);
+        switch(operator){
+          case LESS: return when ? IFLT : IFGE;
+          case LESS_EQUAL: return when ? IFLE : IFGT;
+          case GREATER: return when ? IFGT : IFLE;
+          default: return when ? IFGE : IFLT;
+        }
+      case EQUAL_EQUAL:
+      case BANG_EQUAL: {
+        boolean equal = (operator == TokenType.EQUAL_EQUAL) == when;
+        Class<?> left = compile(expr.left);
+        if(left == void.class) throw new Unsupported();
+        expect(compile(expr.right), left);
+        if(left == boolean.class) return equal ? IF_ICMPEQ : IF_ICMPNE;
+        // Boxed Doubles compare with equals(), which is what compare() does.
+        code.invoke(writer.methodRef("java/lang/Double", "compare", "(DD)I"), "(DD)I");
+        return equal ? IFEQ : IFNE;
+      }
+      default:
+        return -1;
+    }
+  }
+
+  private Class<?> condition(Expr expr){
+    List<Integer> whenFalse = jumpIf(expr, false);
+    code.emit(ICONST_1);
+    int end = code.emitJump(GOTO);
+    patch(whenFalse);
+    code.emit(ICONST_0);
+    code.patchJump(end);
+    return boolean.class;
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    beginScope();
+    for(Stmt statement : stmt.statements){
+      compile(statement);
+    }
+    endScope();
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    Class<?> type = compile(stmt.expression);
+    if(type == double.class) code.emit(POP2);
+    else if(type == boolean.class) code.emit(POP);
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    List<Integer> elseJumps = jumpIf(stmt.condition, false);
+    compile(stmt.thenBranch);
+    if(stmt.elseBranch != null){
+      int end = code.emitJump(GOTO);
+      patch(elseJumps);
+      compile(stmt.elseBranch);
+      code.patchJump(end);
+    }
+    else{
+      patch(elseJumps);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    if(returnType == void.class){
+      if(stmt.value != null) throw new Unsupported();
+      code.emit(RETURN);
+      return null;
+    }
+    if(stmt.value == null) throw new Unsupported();
+    if(stmt.tailCall != null && callsItself(stmt.tailCall)){
+      // A tail call to itself becomes a jump back to the top with new parameters.
+      Expr.Call call = stmt.tailCall;
+      Class<?>[] params = paramKinds(function);
+      for(int i = 0; i < params.length; i++){
+        expect(compile(call.arguments.get(i)), params[i]);
+      }
+      for(int i = params.length - 1; i >= 0; i--){
+        store(locals.get(i));
+      }
+      code.emitLoop(GOTO, 0);
+      return null;
+    }
+    if(stmt.tailCall != null && tailCallsOthers(stmt.tailCall)){
+      // Compiled calls take a JVM frame each, so a chain of tail calls
+      // between functions, like mutual recursion, is left to the
+      // trampoline.
+      throw new Unsupported();
+    }
+    expect(compile(stmt.value), returnType);
+    code.emit(returnType == double.class ? DRETURN : IRETURN);
+    return null;
+  }
+
+  private boolean tailCallsOthers(Expr.Call call){
+    if(!(call.callee instanceof Expr.Variable)) return false;
+    Field field = interpreter.globals.values.get(((Expr.Variable)call.callee).name.lexeme);
+    return field != null && field.value instanceof LoxFunction && ((LoxFunction)field.value).declaration != null && ((LoxFunction)field.value).declaration.tailCallsOthers;
+  }
+
+  private boolean callsItself(Expr.Call call){
+    if(!(call.callee instanceof Expr.Variable)) return false;
+    Expr.Variable callee = (Expr.Variable)call.callee;
+    if(callee.depth != -1 || resolveLocal(callee.name.lexeme) != null) return false;
+    Field field = interpreter.globals.values.get(callee.name.lexeme);
+    return field != null && field.value == function && call.arguments.size() == function.declaration.params.size();
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    Modifiers modifiers = stmt.modifiers;
+    if(modifiers.contains(TokenType.STATIC) || modifiers.contains(TokenType.UNSIGNED) || modifiers.contains(TokenType.BYTE)){
+      throw new Unsupported();
+    }
+    if(stmt.type.type == TypeEnum.ANY){
+      // An 'any' local keeps the kind of its first value; the runtime
+      // refuses to assign it a value of another type afterwards.
+      if(stmt.initializer == null) throw new Unsupported();
+      Class<?> type = compile(stmt.initializer);
+      if(type == void.class) throw new Unsupported();
+      store(addLocal(stmt.name.lexeme, type, modifiers.contains(TokenType.CONST)));
+      return null;
+    }
+    Class<?> type = kind(stmt.type);
+    if(stmt.initializer != null){
+      expect(compile(stmt.initializer), type);
+    }
+    else{
+      code.emit(type == double.class ? DCONST_0 : ICONST_0);
+    }
+    store(addLocal(stmt.name.lexeme, type, modifiers.contains(TokenType.CONST)));
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    int start = code.count;
+    List<Integer> exits = jumpIf(stmt.condition, false);
+    loop = new Loop(loop, start);
+    compile(stmt.body);
+    code.emitLoop(GOTO, start);
+    patch(exits);
+    patch(loop.breaks);
+    loop = loop.enclosing;
+    return null;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    if(loop == null) throw new Unsupported();
+    loop.breaks.add(code.emitJump(GOTO));
+    return null;
+  }
+
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    if(loop == null) throw new Unsupported();
+    code.emitLoop(GOTO, loop.start);
+    return null;
+  }
+
+  @Override
+  public Class<?> visitAssignExpr(Expr.Assign expr) {
+    Local local = resolveLocal(expr.name.lexeme);
+    if(local == null || local.fixed) throw new Unsupported();
+    switch(expr.type){
+      case SET:
+        expect(compile(expr.value), local.type);
+        break;
+      case INCREMENT:
+      case DECREMENT:
+        expect(local.type, double.class);
+        load(local);
+        code.emit(DCONST_1);
+        code.emit(expr.type == AssignType.INCREMENT ? DADD : DSUB);
+        break;
+      case ADD:
+      case SUBTRACT:
+      case MULTIPLY:
+      case DIVIDE:
+      case POWER:
+        // The right side runs first, so the two are swapped back before
+        // the operator.
+        expect(local.type, double.class);
+        expect(compile(expr.value), double.class);
+        load(local);
+        code.emit(DUP2_X2);
+        code.emit(POP2);
+        if(expr.type == AssignType.POWER){
+          code.invoke(writer.methodRef("java/lang/Math", "pow", "(DD)D"), "(DD)D");
+          break;
+        }
+        code.emit(expr.type == AssignType.ADD ? DADD : expr.type == AssignType.SUBTRACT ? DSUB : expr.type == AssignType.MULTIPLY ? DMUL : DDIV);
+        break;
+      default:
+        throw new Unsupported();
+    }
+    code.emit(local.type == double.class ? DUP2 : DUP);
+    store(local);
+    return local.type;
+  }
+
+  @Override
+  public Class<?> visitBinaryExpr(Expr.Binary expr) {
+    int op;
+    switch(expr.operator.type){
+      case PLUS: op = DADD; break;
+      case MINUS: op = DSUB; break;
+      case STAR: op = DMUL; break;
+      case SLASH: op = DDIV; break;
+      case LESS:
+      case LESS_EQUAL:
+      case GREATER:
+      case GREATER_EQUAL:
+      case EQUAL_EQUAL:
+      case BANG_EQUAL:
+        return condition(expr);
+      default:
+        throw new Unsupported();
+    }
+    expect(compile(expr.left), double.class);
+    expect(compile(expr.right), double.class);
+    code.emit(op);
+    return double.class;
+  }
+
+  @Override
+  public Class<?> visitCallExpr(Expr.Call expr) {
+    if(expr.callee instanceof Expr.GetStatic && !expr.nullCheck && expr.templates.isEmpty()) return callNative(expr);
+    if(!(expr.callee instanceof Expr.Variable) || expr.nullCheck || !expr.templates.isEmpty()) throw new Unsupported();
+    Expr.Variable callee = (Expr.Variable)expr.callee;
+    if(callee.depth != -1 || resolveLocal(callee.name.lexeme) != null) throw new Unsupported();
+
+    // Linked against whatever the global holds now. Reassigning it later
+    // invalidates the compiled code.
+    Field field = interpreter.globals.values.get(callee.name.lexeme);
+    if(field == null || !(field.value instanceof LoxFunction)) throw new Unsupported();
+    LoxFunction target = (LoxFunction)field.value;
+    if(!compilable(interpreter, target)) throw new Unsupported();
+    Class<?>[] params = paramKinds(target);
+    if(params.length != expr.arguments.size()) throw new Unsupported();
+
+    for(int i = 0; i < params.length; i++){
+      expect(compile(expr.arguments.get(i)), params[i]);
+    }
+    int index = unit.indexOf(target);
+    if(index == -1){
+      index = unit.size();
+      unit.add(target);
+    }
+    String descriptor = descriptor(target);
+    code.invoke(writer.methodRef(writer.className(), methodName(unit, index), descriptor), descriptor);
+    return returnKind(target);
+  }
+
+  // Shared natives on a global class, like Math::sqrt, that take and
+  // return only num and bool are called as the Java method behind them.
+  private Class<?> callNative(Expr.Call expr){
+    Expr.GetStatic get = (Expr.GetStatic)expr.callee;
+    if(!(get.object instanceof Expr.Variable)) throw new Unsupported();
+    Expr.Variable object = (Expr.Variable)get.object;
+    if(object.depth != -1 || resolveLocal(object.name.lexeme) != null) throw new Unsupported();
+    Field field = interpreter.globals.values.get(object.name.lexeme);
+    if(field == null || !(field.value instanceof LoxNative)) throw new Unsupported();
+    LoxFunction target = ((LoxNative)field.value).methods.get(get.name.lexeme);
+    if(target == null || target.nativeMethod == null || target.nativeMethod.method == null) throw new Unsupported();
+    if(!target.modifiers.contains(TokenType.STATIC)) throw new Unsupported();
+
+    java.lang.reflect.Method method = target.nativeMethod.method;
+    Class<?>[] params = method.getParameterTypes();
+    Class<?> result = method.getReturnType();
+    if(params.length != expr.arguments.size() || (result != double.class && result != boolean.class)) throw new Unsupported();
+    String descriptor = "(";
+    for(int i = 0; i < params.length; i++){
+      if(params[i] != double.class && params[i] != boolean.class) throw new Unsupported();
+      expect(compile(expr.arguments.get(i)), params[i]);
+      descriptor += letter(params[i]);
+    }
+    descriptor += ")" + letter(result);
+    // Reassigning the global or the method invalidates the compiled code.
+    String owner = method.getDeclaringClass().getName().replace('.', '/');
+    code.invoke(writer.methodRef(owner, method.getName(), descriptor), descriptor);
+    return result;
+  }
+
+  @Override
+  public Class<?> visitGroupingExpr(Expr.Grouping expr) {
+    return compile(expr.expression);
+  }
+
+  @Override
+  public Class<?> visitLiteralExpr(Expr.Literal expr) {
+    if(expr.value instanceof Boolean){
+      code.emit((Boolean)expr.value ? ICONST_1 : ICONST_0);
+      return boolean.class;
+    }
+    if(!(expr.value instanceof Double)) throw new Unsupported();
+    double value = (Double)expr.value;
+    if(Double.doubleToRawLongBits(value) == 0) code.emit(DCONST_0);
+    else if(value == 1.0) code.emit(DCONST_1);
+    else code.emit(LDC2_W, writer.doubleConstant(value));
+    return double.class;
+  }
+
+  @Override
+  public Class<?> visitLogicalExpr(Expr.Logical expr) {
+    return condition(expr);
+  }
+
+  @Override
+  public Class<?> visitUnaryExpr(Expr.Unary expr) {
+    if(expr.operator.type == TokenType.BANG) return condition(expr);
+    if(expr.operator.type != TokenType.MINUS) throw new Unsupported();
+    expect(compile(expr.right), double.class);
+    code.emit(DNEG);
+    return double.class;
+  }
+
+  @Override
+  public Class<?> visitVariableExpr(Expr.Variable expr) {
+    Local local = resolveLocal(expr.name.lexeme);
+    if(local == null) throw new Unsupported();
+    load(local);
+    return local.type;
+  }
+
+  @Override
+  public Class<?> visitTernaryExpr(Expr.Ternary expr) {
+    List<Integer> elseJumps = jumpIf(expr.condition, false);
+    Class<?> type = compile(expr.thenBranch);
+    if(type == void.class) throw new Unsupported();
+    int end = code.emitJump(GOTO);
+    patch(elseJumps);
+    expect(compile(expr.elseBranch), type);
+    code.patchJump(end);
+    return type;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitWhenStmt(Stmt.When stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitExpectStmt(Stmt.Expect stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitForEachStmt(Stmt.ForEach stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitTestStmt(Stmt.Test stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitGetFileStmt(Stmt.GetFile stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitModuleStmt(Stmt.Module stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitInterfaceStmt(Stmt.Interface stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitEnumStmt(Stmt.Enum stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitSwitchStmt(Stmt.Switch stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitCaseStmt(Stmt.Case stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitPropertyStmt(Stmt.Property stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitTryStmt(Stmt.Try stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitGetExpr(Expr.Get expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitGetIndexExpr(Expr.GetIndex expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitGetStaticExpr(Expr.GetStatic expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitSetAssignExpr(Expr.SetAssign expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitCoalesceExpr(Expr.Coalesce expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitSetExpr(Expr.Set expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitSetIndexExpr(Expr.SetIndex expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitSuperExpr(Expr.Super expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitThisExpr(Expr.This expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitValueExpr(Expr.Value expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitNewExpr(Expr.New expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitTypeofExpr(Expr.Typeof expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitLengthExpr(Expr.Length expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitAnonymousFunctionExpr(Expr.AnonymousFunction expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitCastExpr(Expr.Cast expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitArrayExpr(Expr.Array expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Class<?> visitTypeExpr(Expr.Type expr) {
+    throw new Unsupported();
+  }
+}
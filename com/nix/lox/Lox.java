@@ -6,16 +6,31 @@ import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 
 public class Lox{
   private static Interpreter interpreter = new Interpreter();
+  private static TypeChecker typeChecker = new TypeChecker(true);
+  private static boolean icStats = false;
+  private static boolean tiered = false;
+  private static boolean tierLog = false;
   static boolean hadError = false;
   static boolean hadRuntimeError = false;
 
   public static void main(String[] args) throws IOException{
+      while(args.length > 0 && args[0].startsWith("--")){
+        if(args[0].equals("--specialize")) interpreter.specialize = true;
+        else if(args[0].equals("--ic-stats")) icStats = true;
+        else if(args[0].equals("--jit")) tiered = true;
+        else if(args[0].equals("--tier-log")) tiered = tierLog = true;
+        else break;
+        args = Arrays.copyOfRange(args, 1, args.length);
+      }
+      if(icStats) InlineCache.recordSites();
+      if(tiered) interpreter.tiers = new Tiers(interpreter, tierLog);
       if(args.length > 1){
-        System.out.println("Usage: jlox [script]");
+        System.out.println("Usage: jlox [--specialize] [--ic-stats] [--jit] [--tier-log] [script]");
         System.exit(64);
       }
       else if(args.length == 1){
@@ -29,12 +44,14 @@ public class Lox{
   public static void runFile(String path) throws IOException{
     byte[] bytes = Files.readAllBytes(Paths.get(path));
     run(new String(bytes, Charset.defaultCharset()));
+    if(icStats) InlineCache.printStats();
 
     if(hadError) System.exit(65);
     if (hadRuntimeError) System.exit(70);
   }
 
   public static void runPrompt() throws IOException{
+    typeChecker = new TypeChecker(false);
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
 
@@ -56,11 +73,17 @@ public class Lox{
 
     if(hadError) return;
 
+    statements = new Optimizer(interpreter).optimize(statements);
+
     Resolver resolver = new Resolver(interpreter);
     resolver.resolve(statements);
 
     if(hadError) return;
 
+    typeChecker.check(statements);
+
+    if(hadError) return;
+
     interpreter.interpret(statements);
   }
 
@@ -1,19 +1,35 @@
 package com.nix.lox;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.nix.lox.LoxType.TypeEnum;
+
+/**
+ * A fixed size Lox array. Num arrays keep their elements in a double[] and
+ * bool arrays pack theirs into the bits of a long[], so neither boxes an
+ * element until it's read; everything else lives in an Object[]. Which one
+ * is picked once, from the element type, when the array is made. A num or
+ * bool array that's given something its primitive store can't hold (nil,
+ * or a num that's a Java Integer like sizeof's) moves to an Object[] for
+ * good, so it reads back exactly what was stored.
+ */
 public class LoxArray {
     private LoxType type;
+    private LoxType elementType;
+    private double[] numbers;
+    private long[] bits;
     private Object[] array;
     private int size;
     private Token name = new Token(TokenType.EOF, "null", null, 0);
 
     public LoxArray(LoxType type, int size){
-        this.type = type;
+        this.type = type.intern();
+        this.elementType = LoxType.of(type.type, type.name.substring(0, Math.max(type.name.length() - 2, 0)));
         this.size = size;
-        array = new Object[size];
-    }
-
-    public Object[] values() {
-        return array;
+        if(elementType.type == TypeEnum.NUMBER) numbers = new double[size];
+        else if(elementType.type == TypeEnum.BOOLEAN) bits = new long[(size + 63) >> 6];
+        else array = new Object[size];
     }
 
     public LoxType getType(){
@@ -22,34 +38,201 @@ public class LoxArray {
 
     public Object get(int index){
         checkSize(index);
+        if(numbers != null) return numbers[index];
+        if(bits != null) return bit(index);
         return array[index];
     }
 
+    private boolean bit(int index){
+        return (bits[index >> 6] & (1L << index)) != 0;
+    }
+
+    private void setBit(int index, boolean value){
+        if(value) bits[index >> 6] |= 1L << index;
+        else bits[index >> 6] &= ~(1L << index);
+    }
+
     public void checkSize(int index){
         if(index >= size) throw new RuntimeError(name, "Index " + index + " out of bounds for array of size " + size);
     }
 
     public void set(int index, Object value){
-        LoxType baseType = new LoxType(type.type, type.name);
-        baseType.name = baseType.name.substring(0, baseType.name.length() - 2);
         checkSize(index);
-        if(value != null) {
-            if(baseType.mismatch(new LoxType(value))) {
-                throw new RuntimeError(name, "Type mismatch for array of type '" + type + "' and '" + new LoxType(value) + "'");
+        check(value);
+        store(index, value);
+    }
+
+    // For values the type checker already proved against the element type.
+    public void put(int index, Object value){
+        checkSize(index);
+        store(index, value);
+    }
+
+    private void check(Object value){
+        if(numbers != null && value instanceof Double) return;
+        if(bits != null && value instanceof Boolean) return;
+        if(value != null && elementType.mismatch(LoxType.typeOf(value))) {
+            throw new RuntimeError(name, "Type mismatch for array of type '" + type + "' and '" + LoxType.typeOf(value) + "'");
+        }
+    }
+
+    private void store(int index, Object value){
+        if(numbers != null){
+            if(value instanceof Double){
+                numbers[index] = (Double)value;
+                return;
             }
+            generalize();
+        }
+        else if(bits != null){
+            if(value instanceof Boolean){
+                setBit(index, (Boolean)value);
+                return;
+            }
+            generalize();
         }
         array[index] = value;
     }
 
+    // Moves a num or bool array to an Object[].
+    private void generalize(){
+        Object[] boxed = new Object[size];
+        for(int i = 0; i < size; i++) boxed[i] = get(i);
+        array = boxed;
+        numbers = null;
+        bits = null;
+    }
+
     public int getSize(){
         return size;
     }
 
+    private void checkRange(int from, int count){
+        if(from < 0 || count < 0 || from + count > size){
+            throw new RuntimeError(name, "Range " + from + " to " + (from + count) + " out of bounds for array of size " + size);
+        }
+    }
+
+    void fill(Object value){
+        check(value);
+        if(numbers != null && value instanceof Double) Arrays.fill(numbers, (Double)value);
+        else if(bits != null && value instanceof Boolean){
+            Arrays.fill(bits, (Boolean)value ? -1L : 0L);
+            // Bits past the end stay clear, so equals and sort can count whole words.
+            if((size & 63) != 0 && bits.length > 0) bits[bits.length - 1] &= (1L << size) - 1;
+        }
+        else{
+            if(array == null) generalize();
+            Arrays.fill(array, value);
+        }
+    }
+
+    // Copies count elements from this array, starting at from, into target
+    // starting at at. Overlapping ranges of one array copy as if through a
+    // temporary array.
+    void copy(int from, LoxArray target, int at, int count){
+        checkRange(from, count);
+        target.checkRange(at, count);
+        if(numbers != null && target.numbers != null){
+            System.arraycopy(numbers, from, target.numbers, at, count);
+            return;
+        }
+        if(array != null && target.array != null && elementType == target.elementType){
+            System.arraycopy(array, from, target.array, at, count);
+            return;
+        }
+        Object[] values = new Object[count];
+        for(int i = 0; i < count; i++) values[i] = get(from + i);
+        for(int i = 0; i < count; i++) target.set(at + i, values[i]);
+    }
+
+    boolean equals(LoxArray other){
+        if(size != other.size) return false;
+        if(numbers != null && other.numbers != null) return Arrays.equals(numbers, other.numbers);
+        if(bits != null && other.bits != null) return Arrays.equals(bits, other.bits);
+        for(int i = 0; i < size; i++){
+            if(!Interpreter.isEqual(get(i), other.get(i))) return false;
+        }
+        return true;
+    }
+
+    // Orders num, bool and string arrays element by element, then by size.
+    int compare(LoxArray other){
+        int shared = Math.min(size, other.size);
+        if(numbers != null && other.numbers != null){
+            int mismatch = Arrays.mismatch(numbers, 0, shared, other.numbers, 0, shared);
+            if(mismatch != -1) return Double.compare(numbers[mismatch], other.numbers[mismatch]);
+        }
+        else{
+            Comparator<Object> order = order();
+            if(order == null || other.elementType.type != elementType.type){
+                throw new RuntimeError(name, "Can't compare arrays of type '" + type + "' and '" + other.type + "'");
+            }
+            for(int i = 0; i < shared; i++){
+                if(get(i) == null || other.get(i) == null) throw new RuntimeError(name, "Can't compare arrays holding nil");
+                int result = order.compare(get(i), other.get(i));
+                if(result != 0) return result;
+            }
+        }
+        return Integer.compare(size, other.size);
+    }
+
+    void sort(){
+        if(numbers != null){
+            Arrays.sort(numbers);
+            return;
+        }
+        Comparator<Object> order = order();
+        if(order == null) throw new RuntimeError(name, "Can't sort array of type '" + type + "'");
+        if(bits != null){
+            int set = 0;
+            for(long word : bits) set += Long.bitCount(word);
+            Arrays.fill(bits, 0L);
+            for(int i = size - set; i < size; i++) setBit(i, true);
+            return;
+        }
+        for(int i = 0; i < size; i++){
+            if(array[i] == null) throw new RuntimeError(name, "Can't sort array holding nil");
+        }
+        Arrays.sort(array, order);
+    }
+
+    // How this array's elements order, or null when they don't.
+    private Comparator<Object> order(){
+        switch(elementType.type){
+            case NUMBER:
+                return new Comparator<Object>() {
+                    @Override
+                    public int compare(Object a, Object b) {
+                        return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+                    }
+                };
+            case BOOLEAN:
+                return new Comparator<Object>() {
+                    @Override
+                    public int compare(Object a, Object b) {
+                        return Boolean.compare((Boolean)a, (Boolean)b);
+                    }
+                };
+            case STRING:
+                return new Comparator<Object>() {
+                    @Override
+                    public int compare(Object a, Object b) {
+                        return a.toString().compareTo(b.toString());
+                    }
+                };
+            default:
+                return null;
+        }
+    }
+
     public String toString(){
         StringBuilder builder = new StringBuilder();
         builder.append("[");
         for(int i = 0; i < size; i++){
-            builder.append(array[i]);
+            if(numbers != null) builder.append(numbers[i]);
+            else if(bits != null) builder.append(bit(i));
+            else builder.append(array[i]);
             if(i != size - 1) builder.append(", ");
         }
         builder.append("]");
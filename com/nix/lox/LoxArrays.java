@@ -0,0 +1,47 @@
+package com.nix.lox;
+
+/**
+ * Bulk operations on arrays, run straight on their backing store.
+ */
+public class LoxArrays extends LoxNative{
+
+  LoxArrays(Environment environment, Interpreter interpreter, LoxClass type){
+    super(null, null, null, null, type);
+    setDetails("Array", new LoxObject(environment, interpreter, "Array", this.type), NativeMethod.bind(this, environment), interpreter);
+  }
+
+  private static LoxArray array(String function, Object value){
+    if(value instanceof LoxArray) return (LoxArray)value;
+    throw new RuntimeError(Token.basic(), "Native '" + function + "' expects an array but got type '" + LoxType.typeOf(value) + "' instead");
+  }
+
+  @Native
+  static void fill(Object array, Object value) {
+    array("fill", array).fill(value);
+  }
+
+  @Native
+  static void copy(Object from, int start, Object to, int at, int count) {
+    array("copy", from).copy(start, array("copy", to), at, count);
+  }
+
+  @Native
+  static boolean equals(Object a, Object b) {
+    return array("equals", a).equals(array("equals", b));
+  }
+
+  @Native
+  static double compare(Object a, Object b) {
+    return array("compare", a).compare(array("compare", b));
+  }
+
+  @Native
+  static void sort(Object array) {
+    array("sort", array).sort();
+  }
+
+  @Override
+  public void defineFields() {
+
+  }
+}
@@ -5,21 +5,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-class Field{
-  Object value;
-  final Modifiers modifiers;
-  final LoxType type;
-
-  Field(Object value, Modifiers modifiers, LoxType type){
-    this.value = value;
-    this.modifiers = modifiers;
-    this.type = type;
-  }
-
-  public Object getValue(){
-    return value;
-  }
-}
+import com.nix.lox.LoxType.TypeEnum;
 
 public class LoxClass implements LoxCallable{
   Map<String, LoxFunction> methods;
@@ -30,6 +16,14 @@ public class LoxClass implements LoxCallable{
   List<Token> templates = new ArrayList<>();
   Environment environment;
 
+  // Bumped whenever one of the class fields changes, so the cached
+  // instance defaults know to rebuild.
+  private int fieldsVersion = 0;
+  private Shape shape;
+  private Object[] defaults;
+  private int defaultsVersion = -1;
+  private LoxType type;
+
   LoxClass(Environment environment, String name, LoxClass superclass, Map<String, LoxFunction> methods, Map<String, Field> fields,Interpreter interpreter){
     this.name = name;
     this.methods = methods;
@@ -39,6 +33,13 @@ public class LoxClass implements LoxCallable{
     this.environment = environment;
   }
 
+  // Natives only get their name after construction, so this is filled in
+  // on first use.
+  LoxType type(){
+    if(type == null) type = LoxType.of(TypeEnum.OBJECT, name);
+    return type;
+  }
+
   LoxFunction findMethod(String name, boolean staticGet){
     if(methods.containsKey(name)){
       if(staticGet){
@@ -94,7 +95,7 @@ public class LoxClass implements LoxCallable{
 
   Field set(String name, Object value){
     Modifiers modifiers = new Modifiers();
-    LoxType type = new LoxType(value);
+    LoxType type = LoxType.typeOf(value);
     if(fields.containsKey(name)){
       modifiers = fields.get(name).modifiers;
       if(modifiers.contains(TokenType.CONST)){
@@ -105,6 +106,8 @@ public class LoxClass implements LoxCallable{
       modifiers = methods.get(name).modifiers;
       Field f = new Field(value, modifiers, methods.get(name).returnType);
       fields.put(name, f);
+      fieldsVersion++;
+      InlineCache.invalidate();
       return f;
     }
 
@@ -135,12 +138,14 @@ public class LoxClass implements LoxCallable{
       else throw new RuntimeError(property.getName(), "Cannot assign to property '" + property.getName().lexeme + "' because it is read-only");
       obj.value = property;
       fields.put(name, obj);
+      fieldsVersion++;
       return;
     }
   }
 
   Field put(String name, Object value, Modifiers modifiers, LoxType type){
     Interpreter.checkModifiers(modifiers, type, value, name);
+    fieldsVersion++;
     Field newf = new Field(value, modifiers, type);
     if(fields.containsKey(name)){
       Field f = fields.get(name);
@@ -148,7 +153,7 @@ public class LoxClass implements LoxCallable{
         setProperty(name, f, value);
         return f;
       }
-      checkType(new LoxType(f.value), type);    
+      checkType(LoxType.typeOf(f.value), type);    
       if(f.modifiers.contains(TokenType.CONST)){
         throw new RuntimeError(new Token(TokenType.VAR, "name", f.value, 0), "Cant assign to constant '" + name +"'");
       }
@@ -162,10 +167,67 @@ public class LoxClass implements LoxCallable{
         return newf;
       }
       fields.put(name, newf);
+      InlineCache.invalidate();
     }
     return newf;
   }
 
+  // Every instance starts out with this shape: the non-static fields
+  // declared on the class itself.
+  Shape instanceShape(){
+    if(shape == null){
+      Shape s = new Shape();
+      for(Map.Entry<String, Field> field : fields.entrySet()){
+        Field f = field.getValue();
+        if(!f.modifiers.contains(TokenType.STATIC)) s = s.add(field.getKey(), f.modifiers, f.type);
+      }
+      shape = s;
+    }
+    return shape;
+  }
+
+  Object[] instanceValues(){
+    if(defaultsVersion != fieldsVersion){
+      int count = 0;
+      for(Field f : fields.values()){
+        if(!f.modifiers.contains(TokenType.STATIC)) count++;
+      }
+      // Only a field that didn't exist before needs a new shape, changed
+      // values just need new defaults.
+      if(shape != null && shape.size() != count) shape = null;
+      Shape s = instanceShape();
+      defaults = new Object[s.size()];
+      for(int i = 0; i < defaults.length; i++){
+        Field f = fields.get(s.names[i]);
+        defaults[i] = f != null ? f.value : null;
+      }
+      defaultsVersion = fieldsVersion;
+    }
+    return defaults.clone();
+  }
+
+  // findMethod without the static checks and warnings.
+  LoxFunction lookupMethod(String name){
+    for(LoxClass klass = this; klass != null; klass = klass.superClass){
+      LoxFunction method = klass.methods.get(name);
+      if(method != null) return method;
+    }
+    return null;
+  }
+
+  void putMethod(String name, LoxFunction method){
+    methods.put(name, method);
+    InlineCache.invalidate();
+  }
+
+  // The class that declares the field 'name', walking up the superclasses.
+  LoxClass fieldOwner(String name){
+    for(LoxClass klass = this; klass != null; klass = klass.superClass){
+      if(klass.fields.containsKey(name)) return klass;
+    }
+    return null;
+  }
+
   @Override
   public String toString(){
     return name;
@@ -180,11 +242,15 @@ public class LoxClass implements LoxCallable{
 
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
+    return instantiate(interpreter, arguments, templates, findMethod("constructor", false), false);
+  }
+
+  Object instantiate(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates, LoxFunction initializer, boolean checked) {
     LoxInstance instance = new LoxInstance(this, interpreter);
     bindTemplates(templates, instance);
-    LoxFunction initializer = findMethod("constructor", false);
     if(initializer != null) {
-      initializer.bind(instance, interpreter).call(interpreter, arguments, templates);
+      if(initializer.direct) initializer.callN(interpreter, instance, arguments, checked);
+      else initializer.bind(instance, interpreter).call(interpreter, arguments, templates);
     }
     return instance;
   }
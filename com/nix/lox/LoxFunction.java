@@ -1,18 +1,55 @@
 package com.nix.lox;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.nix.lox.LoxType.TypeEnum;
 
 public class LoxFunction implements LoxCallable{
+  static final List<LoxClass> NO_TEMPLATES = new ArrayList<>();
+
+  // What a 'return f(...)' in tail position evaluates to: the call still
+  // to be made, which the returning function's run() makes in its place.
+  static class TailCall {
+    final LoxFunction function;
+    final LoxInstance receiver;
+    final List<Object> arguments;
+    final boolean checked;
+
+    TailCall(LoxFunction function, LoxInstance receiver, List<Object> arguments, boolean checked){
+      this.function = function;
+      this.receiver = receiver;
+      this.arguments = arguments;
+      this.checked = checked;
+    }
+  }
+
   public final Stmt.Function declaration;
-  private Environment closure;
+  Environment closure;
   private final boolean isInitializer;
   private final boolean isNative;
   private final LoxCallable callable;
   final Modifiers modifiers;
   public boolean global = true;
   public LoxType returnType;
+  // The instance a bound method runs on. Methods take it in slot 0 of their
+  // frame, so the class environment is never written to.
+  final LoxInstance receiver;
+  // Lox functions with a body can be entered straight from a call site with
+  // call0/1/2/N. Natives, operators and abstract functions go through call().
+  boolean direct;
+  // Natives bound from a Java method, which call sites can hand their
+  // arguments to without building a list.
+  final NativeMethod nativeMethod;
+  private LoxType type;
+  // Set once Tiers runs this function: its profile and, in the compiled
+  // tier, the code calls jump into.
+  Tiers.Profile profile = null;
+  Jit.Compiled compiled = null;
+  // Some compiled code calls this function directly, so reassigning the
+  // global that holds it has to throw that code away.
+  boolean jitLinked = false;
 
   LoxFunction(Stmt.Function declaration, Environment environment, boolean isInitializer, LoxType returnType, Modifiers modifiers) {
     this.declaration = declaration;
@@ -22,6 +59,9 @@ public class LoxFunction implements LoxCallable{
     this.callable = null;
     this.modifiers = modifiers;
     this.returnType = returnType;
+    this.receiver = null;
+    this.direct = isDirect();
+    this.nativeMethod = null;
   }
 
   public LoxFunction(LoxCallable loxCallable, Environment environment, boolean isInitializer, LoxType returnType, Modifiers modifiers) {
@@ -32,23 +72,51 @@ public class LoxFunction implements LoxCallable{
     this.callable = loxCallable;
     this.modifiers = modifiers;
     this.returnType = returnType;
+    this.receiver = null;
+    this.direct = false;
+    this.nativeMethod = loxCallable instanceof NativeMethod ? (NativeMethod)loxCallable : null;
   }
 
   public LoxFunction(Expr.AnonymousFunction body, Environment environment, LoxType rType, Modifiers modifiers) {
     declaration = new Stmt.Function(new Token(TokenType.ANONYMOUS, "null", null, 0), null, body.params, body.body, modifiers, null, rType);
+    declaration.cells = body.cells;
     this.closure = environment;
     this.isInitializer = false;
     this.isNative = false;
     this.callable = null;
     this.modifiers = modifiers;
     this.returnType = rType;
+    this.receiver = null;
+    this.direct = isDirect();
+    this.nativeMethod = null;
+  }
+
+  private LoxFunction(LoxFunction method, LoxInstance receiver) {
+    this.declaration = method.declaration;
+    this.closure = method.closure;
+    this.isInitializer = method.isInitializer;
+    this.isNative = method.isNative;
+    this.callable = method.callable;
+    this.modifiers = method.modifiers;
+    this.returnType = method.returnType;
+    this.receiver = receiver;
+    this.direct = method.direct;
+    this.nativeMethod = method.nativeMethod;
+  }
+
+  boolean isInitializer(){
+    return isInitializer;
+  }
+
+  private boolean isDirect(){
+    return declaration != null && declaration.hasBody != Boolean.FALSE && !modifiers.contains(TokenType.OPERATOR);
   }
 
   LoxFunction bind(LoxInstance instance, Interpreter in){
-    Environment environment = closure;
-    environment.define("this", instance, modifiers);
-    if(!isNative) return new LoxFunction(declaration, environment, isInitializer, returnType, modifiers);
-    else return new LoxFunction(callable, environment, isInitializer, returnType, modifiers);
+    // Natives keep their state in Java, only the ones that run on their
+    // instance look at 'this'.
+    if(isNative && (nativeMethod == null || !nativeMethod.onInstance)) return this;
+    return new LoxFunction(this, instance);
   }
 
   public void define(String name, Object value, Modifiers modifiers, Interpreter in){
@@ -64,12 +132,7 @@ public class LoxFunction implements LoxCallable{
 
   public boolean inEnv(Interpreter intp){
     if(declaration == null) return false;
-    for(int i = 0; i < intp.environment.values.size(); i++){
-      if(intp.environment.values.keySet().toArray()[i].equals(declaration.name.lexeme)){
-        return true;
-      }
-    }
-    return false;
+    return intp.environment.contains(declaration.name.lexeme);
   }
 
   public Object callFunction(Interpreter interpreter, List<Object> arguments, boolean operatorCall, List<LoxClass> templates) {
@@ -83,6 +146,19 @@ public class LoxFunction implements LoxCallable{
     return call(interpreter, arguments, templates);
   }
 
+  // The signature type, e.g. func(num, string):bool.
+  LoxType type(){
+    if(type != null) return type;
+    if(declaration == null) return type = LoxType.of(TypeEnum.OBJECT, "func");
+    String name = "func(";
+    for(int i = 0; i < declaration.params.size(); i++){
+      name += declaration.params.get(i).type.name;
+      if(i != declaration.params.size() - 1) name += ", ";
+    }
+    name += "):" + declaration.returnType.name;
+    return type = LoxType.of(TypeEnum.OBJECT, name);
+  }
+
   public String getName(){
     String types = "(";
     for(int i = 0; i < declaration.params.size(); i++){
@@ -95,27 +171,41 @@ public class LoxFunction implements LoxCallable{
 
   public void checkParameters(List<Object> arguments){
     for(int i = 0; i < arguments.size(); i++) {
-      LoxType argType = new LoxType(arguments.get(i));
-      LoxType paramType = declaration.params.get(i).type;
-      if(argType.matches(paramType)) {
-        continue;
-      }
-      else{
-        throw new RuntimeError(declaration.name, "Expected type '" + paramType + "' for parameter '" + declaration.params.get(i).name.lexeme + "' of function '" + declaration.name.lexeme + "' but got type '" + argType + "' instead");
-      }
+      checkParameter(i, arguments.get(i));
+    }
+  }
+
+  void checkParameter(int i, Object argument){
+    LoxType paramType = declaration.params.get(i).type;
+    if(paramType.type == TypeEnum.ANY) return;
+    LoxType argType = LoxType.typeOf(argument);
+    if(!argType.matches(paramType)) {
+      throw new RuntimeError(declaration.name, "Expected type '" + paramType + "' for parameter '" + declaration.params.get(i).name.lexeme + "' of function '" + declaration.name.lexeme + "' but got type '" + argType + "' instead");
     }
   }
 
+  void checkReturn(Object value){
+    if(returnType.type == TypeEnum.ANY) return;
+    if(!(LoxType.typeOf(value).matches(returnType))) throw new RuntimeError(declaration.name, "Expected type '" + returnType + "' for function '" + declaration.name.lexeme + "' return value" );
+  }
+
+  void checkVoidReturn(){
+    if(returnType.type != TypeEnum.VOID) throw missingReturn();
+  }
+
+  RuntimeError missingReturn(){
+    return new RuntimeError(declaration.name, "Expected type function '" + declaration.name.lexeme + "' to return value of type '" + returnType + "'");
+  }
+
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-    
-
-    global = inEnv(interpreter);
+    if(nativeMethod != null) return nativeMethod.callN(receiver, arguments);
     if(isNative){
       return callable.call(interpreter, arguments, templates);
     }
-    if(global){
-      if(!declaration.hasBody){
+    if(declaration.hasBody == Boolean.FALSE){
+      global = inEnv(interpreter);
+      if(global){
         String parameString = "";
         for(int i = 0; i < declaration.params.size(); i++){
           parameString += declaration.params.get(i).type;
@@ -127,24 +217,168 @@ public class LoxFunction implements LoxCallable{
     }
 
     checkParameters(arguments);
-    
-    Environment environment = new Environment(closure, interpreter);
+    return enter(interpreter, receiver, arguments);
+  }
+
+  Object call0(Interpreter interpreter, LoxInstance receiver){
+    if(nativeMethod != null) return nativeMethod.call0(receiver);
+    if(!direct) return slowCall(interpreter, receiver, new ArrayList<>());
+    if(compiled != null && compiled.accepts(this)) return compiled.call();
+    return run(interpreter, frame(interpreter, receiver), receiver);
+  }
+
+  Object call1(Interpreter interpreter, LoxInstance receiver, Object a, boolean checked){
+    if(nativeMethod != null) return nativeMethod.call1(receiver, a);
+    if(!direct) return slowCall(interpreter, receiver, Arrays.asList(a));
+    if(compiled != null && compiled.accepts(this, a)) return compiled.call(a);
+    if(!checked) checkParameter(0, a);
+    Environment environment = frame(interpreter, receiver);
+    int base = declaration.hasThis ? 1 : 0;
+    environment.defineAt(base, declaration.params.get(0).name.lexeme, a);
+    return run(interpreter, environment, receiver);
+  }
+
+  Object call2(Interpreter interpreter, LoxInstance receiver, Object a, Object b, boolean checked){
+    if(nativeMethod != null) return nativeMethod.call2(receiver, a, b);
+    if(!direct) return slowCall(interpreter, receiver, Arrays.asList(a, b));
+    return enter2(interpreter, receiver, a, b, checked);
+  }
+
+  // An operator method run for a binary operator. Operators aren't direct,
+  // so that calling one by name still goes through callFunction and fails.
+  Object callOperator(Interpreter interpreter, LoxInstance receiver, Object a, Object b){
+    return enter2(interpreter, receiver, a, b, false);
+  }
+
+  private Object enter2(Interpreter interpreter, LoxInstance receiver, Object a, Object b, boolean checked){
+    if(compiled != null && compiled.accepts(this, a, b)) return compiled.call(a, b);
+    if(!checked){
+      checkParameter(0, a);
+      checkParameter(1, b);
+    }
+    Environment environment = frame(interpreter, receiver);
+    int base = declaration.hasThis ? 1 : 0;
+    environment.defineAt(base, declaration.params.get(0).name.lexeme, a);
+    environment.defineAt(base + 1, declaration.params.get(1).name.lexeme, b);
+    return run(interpreter, environment, receiver);
+  }
+
+  Object callN(Interpreter interpreter, LoxInstance receiver, List<Object> arguments, boolean checked){
+    if(nativeMethod != null) return nativeMethod.callN(receiver, arguments);
+    if(!direct) return slowCall(interpreter, receiver, arguments);
+    if(compiled != null && compiled.accepts(this, arguments)) return compiled.call(arguments);
+    if(!checked) checkParameters(arguments);
+    return enter(interpreter, receiver, arguments);
+  }
+
+  private Object slowCall(Interpreter interpreter, LoxInstance receiver, List<Object> arguments){
+    LoxFunction function = receiver != null && receiver != this.receiver ? bind(receiver, interpreter) : this;
+    return function.callFunction(interpreter, arguments, false, NO_TEMPLATES);
+  }
+
+  private Object enter(Interpreter interpreter, LoxInstance receiver, List<Object> arguments){
+    Environment environment = frame(interpreter, receiver);
+    int base = declaration.hasThis ? 1 : 0;
     for (int i = 0; i < declaration.params.size(); i++) {
-      environment.define(declaration.params.get(i).name.lexeme, arguments.get(i), new Modifiers());
+      environment.defineAt(base + i, declaration.params.get(i).name.lexeme, arguments.get(i));
     }
+    return run(interpreter, environment, receiver);
+  }
+
+  private Environment frame(Interpreter interpreter, LoxInstance receiver){
+    Environment environment = declaration.frameNames != null
+        ? new Environment(closure, interpreter, declaration.frameNames)
+        : new Environment(closure, interpreter, declaration.params.size() + 1);
+    if(declaration.hasThis) environment.defineAt(0, "this", receiver);
+    return environment;
+  }
+
+  private Object run(Interpreter interpreter, Environment environment, LoxInstance receiver){
+    Object value = body(interpreter, environment, receiver);
+    if(value instanceof TailCall) return trampoline(interpreter, environment, (TailCall)value);
+    return value;
+  }
+
+  private Object body(Interpreter interpreter, Environment environment, LoxInstance receiver){
+    if(declaration.cells != null) box(environment);
+    if(interpreter.tiers != null) return interpreter.tiers.run(this, environment, receiver);
+    interpreter.executeBlock(declaration.body, environment);
+    return finish(interpreter, receiver);
+  }
+
+  // Parameters that closures share get Cells, like variables do.
+  private void box(Environment environment){
+    for(int slot : declaration.cells){
+      environment.setSlot(slot, new Environment.Cell(environment.getSlot(slot)));
+    }
+  }
+
+  // Makes a chain of tail calls one after another, so it takes no more
+  // Java stack than a single call. A function calling itself reuses its
+  // frame when no closure can have kept it.
+  private Object trampoline(Interpreter interpreter, Environment environment, TailCall call){
+    LoxFunction caller = this;
+    // Callers whose return type still has to be checked against the
+    // result, innermost last.
+    List<LoxFunction> unchecked = null;
+    Object value = call;
+    while(value instanceof TailCall){
+      call = (TailCall)value;
+      LoxFunction function = call.function;
+      if(function.declaration != caller.declaration && !caller.declaration.returnChecked && caller.returnType.type != TypeEnum.ANY){
+        if(unchecked == null) unchecked = new ArrayList<>();
+        // Each check is kept once, so a long chain needs no more of them.
+        for(int i = 0; i < unchecked.size(); i++){
+          LoxFunction pending = unchecked.get(i);
+          if(pending.declaration == caller.declaration && pending.returnType.intern() == caller.returnType.intern()){
+            unchecked.remove(i);
+            break;
+          }
+        }
+        unchecked.add(caller);
+      }
+      if(function.compiled != null && function.compiled.accepts(function, call.arguments)){
+        value = function.compiled.call(call.arguments);
+        break;
+      }
+      if(!call.checked) function.checkParameters(call.arguments);
+      if(function != caller || function.declaration.frameCaptured){
+        environment = function.frame(interpreter, call.receiver);
+      }
+      else if(function.declaration.hasThis){
+        environment.defineAt(0, "this", call.receiver);
+      }
+      int base = function.declaration.hasThis ? 1 : 0;
+      for(int i = 0; i < call.arguments.size(); i++){
+        environment.defineAt(base + i, function.declaration.params.get(i).name.lexeme, call.arguments.get(i));
+      }
+      value = function.body(interpreter, environment, call.receiver);
+      caller = function;
+    }
+    if(unchecked != null){
+      for(int i = unchecked.size() - 1; i >= 0; i--) unchecked.get(i).checkReturn(value);
+    }
+    return value;
+  }
 
-    try{
-      interpreter.executeBlock(declaration.body, environment);
-    } catch (Return returnValue){
-      if(!(new LoxType(returnValue.value).matches(returnType))) throw new RuntimeError(declaration.name, "Expected type '" + returnType + "' for function '" + declaration.name.lexeme + "' return value" );
+  // The call's result once the body has run.
+  Object finish(Interpreter interpreter, LoxInstance receiver){
+    Completion completion = interpreter.completion;
+    interpreter.completion = Completion.NORMAL;
+    if(completion == Completion.RETURN){
+      Object value = interpreter.returnValue;
+      interpreter.returnValue = null;
+      // Checked by whoever makes the call, in trampoline().
+      if(value instanceof TailCall) return value;
+      if(!declaration.returnChecked) checkReturn(value);
 
-      if (isInitializer) return closure.getAt(0, "this");
+      if (isInitializer) return receiver;
 
-      return returnValue.value;
+      return value;
     }
-    if(returnType.type != TypeEnum.VOID) throw new RuntimeError(declaration.name, "Expected type function '" + declaration.name.lexeme + "' to return value of type '" + returnType + "'");
+    checkVoidReturn();
 
-    if(isInitializer) return closure.getAt(0, "this");
+    if(isInitializer) return receiver;
     return null;
   }
 
@@ -1,22 +1,20 @@
 package com.nix.lox;
 
-import java.util.Map;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 
 public class LoxInstance implements LoxCallable{
   LoxClass klass;
-  private final Map<String, Field> fields = new HashMap<>();
-  private final Interpreter interpreter;
+  Shape shape;
+  Object[] values;
+  final Interpreter interpreter;
 
   LoxInstance(LoxClass klass, Interpreter interpreter) {
     this.klass = klass;
     this.interpreter = interpreter;
-
-    for(Map.Entry<String, Field> field : klass.fields.entrySet()){
-      if(!field.getValue().modifiers.contains(TokenType.STATIC)) fields.put(field.getKey(), field.getValue());
-    }
+    this.shape = klass.instanceShape();
+    this.values = klass.instanceValues();
   }
 
   Object get(Token name, boolean staticGet){
@@ -34,13 +32,8 @@ public class LoxInstance implements LoxCallable{
       }
     }
     else{
-      if(fields.containsKey(name)){
-        if(fields.get(name).value instanceof LoxProperty) {
-          LoxProperty property = (LoxProperty) fields.get(name).value;
-          return getProperty(property);
-        }
-        return fields.get(name).value;
-      }
+      int slot = shape.indexOf(name);
+      if(slot != -1) return getSlot(slot);
     }
 
     LoxFunction method = klass.findMethod(name, staticGet);
@@ -49,49 +42,53 @@ public class LoxInstance implements LoxCallable{
     throw new RuntimeError(new Token(TokenType.NIL, name, method, 0), message);
   }
 
-  Field getField(String name, boolean staticGet, String message){
-    if(staticGet) {
-      if(klass.findField(name, staticGet) != null){
-        return klass.findField(name, staticGet);
-      }
+  void set(Token name, Object value){
+    set(name.lexeme, value);
+  }
+
+  void set(String name, Object value){
+    int slot = shape.indexOf(name);
+    if(slot == -1){
+      addField(name, value);
+      return;
     }
-    else{
-      if(fields.containsKey(name)){
-        if(fields.get(name).value instanceof LoxProperty) {
-          LoxProperty property = (LoxProperty) fields.get(name).value;
-          property.value = getProperty(property);
-          return new Field(property, fields.get(name).modifiers, fields.get(name).type);
-        }
-        return fields.get(name);
-      }
+
+    Object current = values[slot];
+    if(current instanceof LoxProperty) {
+      setProperty((LoxProperty)current, value);
+      return;
+    }
+
+    Modifiers modifiers = shape.modifiers[slot];
+    if(shape.types[slot] != null) Interpreter.checkModifiers(modifiers, shape.types[slot], value, name);
+    if(modifiers.contains(TokenType.CONST)){
+      throw new RuntimeError(new Token(TokenType.VAR, "name", value, 0), "Cant assign '" + value +"' to constant '" + name + "'");
     }
-    throw new RuntimeError(new Token(TokenType.NIL, name, null, 0), message);
+    LoxClass.checkType(LoxType.typeOf(current), LoxType.typeOf(value));
+    values[slot] = value;
   }
 
-  void set(Token name, Object value){
-    set(name.lexeme, value);
+  private void addField(String name, Object value) {
+    shape = shape.add(name, Modifiers.empty(), null);
+    if(shape.size() > values.length){
+      values = Arrays.copyOf(values, Math.max(shape.size(), values.length * 2));
+    }
+    values[shape.size() - 1] = value;
   }
 
-  
-  void set(String name, Object value){
-    //fields.put(name, value);
-    Field obj = getField(name, false, "Field not found '" + name + "'");
-    setProperty(name, obj, value);
-    Interpreter.checkModifiers(obj.modifiers, obj.type, value, name);
-    fields.put(name, klass.set(name, value));
+  public void setProperty(LoxProperty property, Object value) {
+    ArrayList<Object> args = new ArrayList<>();
+    args.add(value);
+    if(property.getSet() != null) property.value = property.set(interpreter, args);
+    else throw new RuntimeError(property.getName(), "Cannot assign to property '" + property.getName().lexeme + "' because it is read-only");
   }
 
-  public void setProperty(String name, Field obj, Object value) {
-    if(obj.value instanceof LoxProperty) {
-      LoxProperty property = (LoxProperty) obj.value;
-      ArrayList<Object> args = new ArrayList<>();
-      args.add(value);
-      if(property.getSet() != null) property.value = property.set(interpreter, args);
-      else throw new RuntimeError(property.getName(), "Cannot assign to property '" + property.getName().lexeme + "' because it is read-only");
-      obj.value = property;
-      fields.put(name, obj);
-      return;
+  Object getSlot(int slot){
+    Object value = values[slot];
+    if(value instanceof LoxProperty) {
+      return getProperty((LoxProperty)value);
     }
+    return value;
   }
 
   public Object getProperty(LoxProperty property) {
@@ -100,7 +97,9 @@ public class LoxInstance implements LoxCallable{
 
   @Override
   public String toString() {
-    return (String)klass.findMethod("toString", false).call(interpreter, new ArrayList<>(), new ArrayList<>());
+    LoxFunction method = klass.findMethod("toString", false);
+    if(method.declaration != null) method = method.bind(this, interpreter);
+    return (String)Rope.flatten(method.call(interpreter, new ArrayList<>(), new ArrayList<>()));
   }
 
   @Override
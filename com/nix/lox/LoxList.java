@@ -1,171 +1,316 @@
 package com.nix.lox;
 
-import java.util.List;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 
-import com.nix.lox.LoxType.TypeEnum;
+/**
+ * A growable list: an instance of the one List class, holding its own
+ * storage. That's a double[] for as long as every element is a num, then an
+ * Object[] from the first element that isn't, so number lists never box
+ * what they hold. Bulk operations (addAll, slice, sort, binarySearch and
+ * the rest) run on that storage directly instead of going through Lox calls
+ * one element at a time.
+ */
+public class LoxList extends LoxInstance{
+  private double[] numbers = new double[8];
+  private Object[] items = null;
+  private int size = 0;
 
-public class LoxList extends LoxNative{
-  private List<Object> items = new ArrayList<Object>();
+  LoxList(LoxClass klass, Interpreter interpreter){
+    super(klass, interpreter);
+  }
 
+  // A new, empty list.
+  static LoxList create(Interpreter interpreter) {
+    return new LoxList(interpreter.lists, interpreter);
+  }
 
-  LoxList(Environment environment, Interpreter interpreter, LoxClass type){
-    super(null, null, null, null, type);
-    setDetails("List", new LoxObject(environment, interpreter, "List", this.type), defineFunctions(environment), interpreter);
+  // The list behind a Lox value, or null when it isn't one.
+  static LoxList of(Object value) {
+    return value instanceof LoxList ? (LoxList)value : null;
   }
 
-  private Map<String, LoxFunction> defineFunctions(Environment environment) {
-    Map<String, LoxFunction> methods = new HashMap<>();
-    methods.put("add", add(environment));
-    methods.put("remove", remove(environment));
-    methods.put("indexOf", indexOf(environment));
-    methods.put("get", get(environment));
-    methods.put("length", length(environment));
-    methods.put("first", first(environment));
-    methods.put("last", last(environment));
-    methods.put("contains", contains(environment));
-    return methods;
+  int size() {
+    return size;
   }
 
- private LoxFunction contains(Environment environment) {
-    return new LoxFunction(new LoxCallable() {
+  Object at(int index) {
+    return items == null ? (Object)numbers[index] : items[index];
+  }
 
-      @Override
-      public int arity() {
-        return 1;
+  private void store(int index, Object value) {
+    if(items == null){
+      if(value instanceof Double){
+        numbers[index] = (Double)value;
+        return;
       }
+      generalize();
+    }
+    items[index] = value;
+  }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-        for(Object item : items){
-          if(item.equals(arguments.get(0))){
-            return true;
-          }
-        }
-        return false;
-      }
-      
-    }, environment, false, new LoxType(name, TypeEnum.BOOLEAN), new Modifiers(TokenType.STATIC));
+  // Moves a number list to an Object[], for good.
+  private void generalize() {
+    items = new Object[numbers.length];
+    for(int i = 0; i < size; i++) items[i] = numbers[i];
+    numbers = null;
   }
 
-private LoxFunction get(Environment environment) {
-    return new LoxFunction(new LoxCallable() {
+  private void ensure(int capacity) {
+    int length = items == null ? numbers.length : items.length;
+    if(capacity <= length) return;
+    int grown = Math.max(capacity, length * 2);
+    if(items == null) numbers = Arrays.copyOf(numbers, grown);
+    else items = Arrays.copyOf(items, grown);
+  }
 
-      @Override
-      public int arity() {
-        return 1;
-      }
+  // Opens count slots at index, moving what was there up.
+  private void open(int index, int count) {
+    ensure(size + count);
+    if(items == null) System.arraycopy(numbers, index, numbers, index + count, size - index);
+    else System.arraycopy(items, index, items, index + count, size - index);
+    size += count;
+  }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-        return items.get((int)((double)arguments.get(0)));
-      }
-      
-    }, environment, false, new LoxType(name, TypeEnum.OBJECT), new Modifiers(TokenType.STATIC));
+  private void close(int from, int to) {
+    if(items == null) System.arraycopy(numbers, to, numbers, from, size - to);
+    else{
+      System.arraycopy(items, to, items, from, size - to);
+      Arrays.fill(items, size - (to - from), size, null);
+    }
+    size -= to - from;
   }
 
-private LoxFunction add(Environment environment) {
-    return new LoxFunction(new LoxCallable() {
+  private void checkIndex(int index, int bound) {
+    if(index < 0 || index >= bound) throw new RuntimeError(Token.basic(), "Index " + index + " out of bounds for list of size " + size);
+  }
 
-      @Override
-      public int arity() {
-        return 1;
-      }
+  private void checkRange(int from, int to) {
+    if(from < 0 || to > size || from > to) throw new RuntimeError(Token.basic(), "Range " + from + " to " + to + " out of bounds for list of size " + size);
+  }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-        items.add(arguments.get(0));
-        return null;
-      }
-      
-    }, environment, false, new LoxType(name, TypeEnum.VOID), new Modifiers(TokenType.STATIC));
+  void addAll(Collection<?> values) {
+    ensure(size + values.size());
+    for(Object value : values) store(size++, value);
   }
 
-  private LoxFunction remove(Environment environment) {
-    return new LoxFunction(new LoxCallable() {
+  @Native(shared = false)
+  boolean contains(Object value) {
+    return find(value) != -1;
+  }
 
-      @Override
-      public int arity() {
-        return 1;
+  private int find(Object value) {
+    if(items == null){
+      if(!(value instanceof Double)) return -1;
+      long bits = Double.doubleToLongBits((Double)value);
+      for(int i = 0; i < size; i++){
+        if(Double.doubleToLongBits(numbers[i]) == bits) return i;
       }
+      return -1;
+    }
+    for(int i = 0; i < size; i++){
+      if(Interpreter.isEqual(items[i], value)) return i;
+    }
+    return -1;
+  }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-        items.remove((int)((double)arguments.get(0)));
-        return null;
-      }
-      
-    }, environment, false, new LoxType(name, TypeEnum.VOID), new Modifiers(TokenType.STATIC));
+  @Native(shared = false, operator = true)
+  Object getAt(int index) {
+    checkIndex(index, size);
+    return at(index);
   }
 
-  private LoxFunction indexOf(Environment environment) {
-    return new LoxFunction(new LoxCallable() {
+  @Native(shared = false, operator = true)
+  Object setAt(int index, Object value) {
+    checkIndex(index, size);
+    store(index, value);
+    return value;
+  }
 
-      @Override
-      public int arity() {
-        return 1;
-      }
+  @Native(shared = false)
+  void add(Object value) {
+    ensure(size + 1);
+    store(size++, value);
+  }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-        return items.indexOf((arguments.get(0)));
+  @Native(shared = false)
+  void addAll(Object values) {
+    LoxList list = of(values);
+    if(list != null){
+      int count = list.size;
+      ensure(size + count);
+      if(items == null && list.items == null){
+        System.arraycopy(list.numbers, 0, numbers, size, count);
+        size += count;
       }
-      
-    }, environment, false, new LoxType(name, TypeEnum.NUMBER), new Modifiers(TokenType.STATIC));
+      else for(int i = 0; i < count; i++) store(size++, list.at(i));
+    }
+    else if(values instanceof LoxArray){
+      LoxArray array = (LoxArray)values;
+      ensure(size + array.getSize());
+      for(int i = 0; i < array.getSize(); i++) store(size++, array.get(i));
+    }
+    else throw new RuntimeError(Token.basic(), "Can only add all of a list or an array, not '" + LoxType.typeOf(values) + "'");
   }
 
-  private LoxFunction length(Environment environment) {
-    return new LoxFunction(new LoxCallable() {
+  @Native(shared = false)
+  void insertAt(int index, Object value) {
+    checkIndex(index, size + 1);
+    open(index, 1);
+    store(index, value);
+  }
 
-      @Override
-      public int arity() {
-        return 0;
-      }
+  @Native(shared = false)
+  void remove(int index) {
+    checkIndex(index, size);
+    close(index, index + 1);
+  }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-        return (double)items.size();
-      }
-      
-    }, environment, false, new LoxType(name, TypeEnum.NUMBER), new Modifiers(TokenType.STATIC));
+  @Native(shared = false)
+  void removeRange(int from, int to) {
+    checkRange(from, to);
+    close(from, to);
   }
 
-  private LoxFunction first(Environment environment) {
-    return new LoxFunction(new LoxCallable() {
+  @Native(shared = false)
+  LoxInstance slice(int from, int to) {
+    checkRange(from, to);
+    LoxList slice = new LoxList(klass, interpreter);
+    slice.ensure(to - from);
+    if(items == null) System.arraycopy(numbers, from, slice.numbers, 0, to - from);
+    else{
+      slice.generalize();
+      System.arraycopy(items, from, slice.items, 0, to - from);
+    }
+    slice.size = to - from;
+    return slice;
+  }
 
-      @Override
-      public int arity() {
-        return 0;
-      }
+  @Native(shared = false)
+  double indexOf(Object value) {
+    return find(value);
+  }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-        return items.get(0);
-      }
-      
-    }, environment, false, new LoxType(name, TypeEnum.OBJECT), new Modifiers(TokenType.STATIC));
+  @Native(shared = false)
+  double length() {
+    return size;
   }
 
-  private LoxFunction last(Environment environment) {
-    return new LoxFunction(new LoxCallable() {
+  @Native(shared = false)
+  Object first() {
+    checkIndex(0, size);
+    return at(0);
+  }
 
-      @Override
-      public int arity() {
-        return 0;
-      }
+  @Native(shared = false)
+  Object last() {
+    checkIndex(size - 1, size);
+    return at(size - 1);
+  }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-        return items.get(items.size() - 1);
+  @Native(shared = false)
+  void reverse() {
+    for(int i = 0, j = size - 1; i < j; i++, j--){
+      if(items == null){
+        double number = numbers[i];
+        numbers[i] = numbers[j];
+        numbers[j] = number;
       }
-      
-    }, environment, false, new LoxType(name, TypeEnum.OBJECT), new Modifiers(TokenType.STATIC));
+      else{
+        Object item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+      }
+    }
   }
 
- @Override
-  public void defineFields() {
-    
+  @Native(shared = false)
+  void fill(Object value) {
+    if(items == null && value instanceof Double) Arrays.fill(numbers, 0, size, (Double)value);
+    else{
+      if(items == null) generalize();
+      Arrays.fill(items, 0, size, value);
+    }
+  }
+
+  @Native(shared = false)
+  LoxInstance stream() {
+    return LoxStream.from(interpreter, this);
+  }
+
+  // Sorts nums or strings in their natural order.
+  @Native(shared = false)
+  void sort() {
+    if(items == null) Arrays.sort(numbers, 0, size);
+    else Arrays.sort(items, 0, size, natural());
+  }
+
+  // Sorts by a function of two elements that returns a num: below zero
+  // when the first goes first, zero when they're equal.
+  @Native(shared = false)
+  void sortWith(Object comparator) {
+    if(!(comparator instanceof LoxCallable)) throw new RuntimeError(Token.basic(), "Can only sort with a function, not '" + LoxType.typeOf(comparator) + "'");
+    final LoxCallable function = (LoxCallable)comparator;
+    // A number list sorts a boxed copy and keeps its double[].
+    Object[] sorting = items;
+    int count = size;
+    if(items == null){
+      sorting = new Object[count];
+      for(int i = 0; i < count; i++) sorting[i] = numbers[i];
+    }
+    final List<Object> arguments = new ArrayList<>(2);
+    final List<LoxClass> generics = new ArrayList<>(0);
+    try{
+      Arrays.sort(sorting, 0, count, new Comparator<Object>() {
+        @Override
+        public int compare(Object a, Object b) {
+          arguments.clear();
+          arguments.add(a);
+          arguments.add(b);
+          Object result = function.call(interpreter, arguments, generics);
+          if(!(result instanceof Double)) throw new RuntimeError(Token.basic(), "Sort function must return a num, not '" + LoxType.typeOf(result) + "'");
+          return Double.compare((Double)result, 0.0);
+        }
+      });
+    }
+    catch(IllegalArgumentException e){
+      throw new RuntimeError(Token.basic(), "Sort function doesn't give a consistent order");
+    }
+    if(sorting != items){
+      if(items != null || size != count) throw new RuntimeError(Token.basic(), "List changed while it was being sorted");
+      for(int i = 0; i < count; i++) numbers[i] = (Double)sorting[i];
+    }
+  }
+
+  // Where value is in a sorted list, or -(where it would go) - 1.
+  @Native(shared = false)
+  double binarySearch(Object value) {
+    if(items == null){
+      if(!(value instanceof Double)) throw new RuntimeError(Token.basic(), "Can't search a num list for '" + LoxType.typeOf(value) + "'");
+      return Arrays.binarySearch(numbers, 0, size, (Double)value);
+    }
+    return Arrays.binarySearch(items, 0, size, value, natural());
+  }
+
+  private static boolean isNumber(Object value) {
+    return value instanceof Double || value instanceof Integer;
+  }
+
+  private static boolean isString(Object value) {
+    return Rope.isString(value) || value instanceof Character;
+  }
+
+  static Comparator<Object> natural() {
+    return new Comparator<Object>() {
+      @Override
+      public int compare(Object a, Object b) {
+        if(isNumber(a) && isNumber(b)) return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+        if(isString(a) && isString(b)) return a.toString().compareTo(b.toString());
+        throw new RuntimeError(Token.basic(), "Can't order '" + LoxType.typeOf(a) + "' and '" + LoxType.typeOf(b) + "'");
+      }
+    };
   }
 }
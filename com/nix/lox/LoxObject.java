@@ -1,7 +1,5 @@
 package com.nix.lox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,39 +13,23 @@ public class LoxObject extends LoxNative{
   }
   
   private Map<String, LoxFunction> defineFunctions(Environment environment){
-    Map<String, LoxFunction> methods = new HashMap<>();
+    Map<String, LoxFunction> methods = NativeMethod.bind(this, environment);
     methods.put("init", init(environment));
-    methods.put("toString", toString(environment));
     //methods.put("typeof", typeof(environment));
-    methods.put("fields", fields(environment));
     return methods;
   }
 
-  private LoxFunction fields(Environment environment) {
-    return new LoxFunction(new LoxCallable() {
-
-      @Override
-      public int arity() {
-        return 0;
-      }
-
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-        LoxInstance map = new LoxInstance(new LoxMap(environment, interpreter, type), interpreter);
-        for(String s : type.fields.keySet()){
-          ArrayList<Object> args = new ArrayList<>();
-          args.add(s);
-          args.add(type.fields.get(s).value);
-          map.klass.findMethod("put", false).call(interpreter, args,  templates);
-        }
-        return map;
-      }
-      
-    }, environment, false, new LoxType(name, TypeEnum.OBJECT), new Modifiers());
+  @Native(shared = false)
+  LoxInstance fields() {
+    LoxMap map = LoxMap.create(interpreter);
+    for(String s : type.fields.keySet()){
+      map.put(s, type.fields.get(s).value);
+    }
+    return map;
   }
 
   public void defineFields(){
-    put("name", "Object$"+this.type, Modifiers.empty(), new LoxType("name", TypeEnum.STRING));
+    put("name", "Object$"+this.type, Modifiers.empty(), LoxType.of(TypeEnum.STRING, "name"));
   }
 
   private LoxFunction init(Environment environment){
@@ -63,27 +45,12 @@ public class LoxObject extends LoxNative{
             return null;
         }
         
-      }, environment, true, new LoxType(name, TypeEnum.VOID), new Modifiers(TokenType.STATIC));
+      }, environment, true, LoxType.of(TypeEnum.VOID, name), new Modifiers(TokenType.STATIC));
   }
 
-  private LoxFunction toString(Environment environment) {
-      return new LoxFunction(new LoxCallable() {
-
-        @Override
-        public int arity() {
-          return 0;
-        }
-
-        @Override
-        public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates) {
-            return defaultToString();
-        }
-
-        public String defaultToString(){
-          return "Lox.Type$"+type;
-        }
-        
-      }, environment, false, new LoxType(name, TypeEnum.STRING), new Modifiers());
+  @Native(value = "toString", shared = false)
+  String defaultToString(){
+    return "Lox.Type$"+type;
   }
 
 }
@@ -0,0 +1,442 @@
+package com.nix.lox;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A lazy sequence of values, made from a list, map, array, string, range
+ * or the lines of a file. map, filter and the other stages only record
+ * what to do; nothing runs until a terminal operation (reduce, count,
+ * collect, forEach). Then every stage is chained into one pass that pushes
+ * each value from the source through all of them in turn, so no stage
+ * builds a list of its own. Only sorted and distinct keep values around,
+ * since they have to. A stream is an instance of the one Stream class, and
+ * its stages are plain Java objects, so building a pipeline makes no
+ * classes.
+ */
+public class LoxStream extends LoxInstance{
+  private final Source source;
+  private final Stage stage;
+
+  // Pushes values into a sink until there are none left or it stops taking them.
+  private interface Source {
+    void run(Sink sink);
+  }
+
+  private abstract static class Sink {
+    final Sink downstream;
+
+    Sink(Sink downstream){
+      this.downstream = downstream;
+    }
+
+    // False once no more values are wanted.
+    abstract boolean accept(Object value);
+
+    // Called once the source is done, for stages that hold values back.
+    void end(){
+      if(downstream != null) downstream.end();
+    }
+  }
+
+  // One recorded stage, with the stages before it.
+  private abstract static class Stage {
+    final Stage previous;
+
+    Stage(Stage previous){
+      this.previous = previous;
+    }
+
+    abstract Sink sink(Sink downstream);
+  }
+
+  // The Stream class, with the natives that start a stream.
+  static class StreamClass extends NativeClass{
+
+    StreamClass(Environment environment, Interpreter interpreter){
+      super("Stream", LoxStream.class, environment, interpreter);
+    }
+
+    @Override
+    LoxInstance create() {
+      return new LoxStream(this, interpreter, null, null);
+    }
+
+    @Native
+    LoxInstance of(Object value) {
+      return new LoxStream(this, interpreter, sourceOf(value), null);
+    }
+
+    // The nums from up to, not including, to.
+    @Native
+    LoxInstance range(final double from, final double to) {
+      return new LoxStream(this, interpreter, new Source() {
+        @Override
+        public void run(Sink sink) {
+          for(double i = from; i < to; i++){
+            if(!sink.accept(i)) return;
+          }
+        }
+      }, null);
+    }
+
+    // The lines of a file, read as the stream runs.
+    @Native
+    LoxInstance lines(final String path) {
+      return new LoxStream(this, interpreter, new Source() {
+        @Override
+        public void run(Sink sink) {
+          try(BufferedReader reader = new BufferedReader(new FileReader(path))){
+            String line;
+            while((line = reader.readLine()) != null){
+              if(!sink.accept(line)) return;
+            }
+          }
+          catch(IOException e){
+            throw new RuntimeError(Token.basic(), "Error reading file at specified path '" + path + "'");
+          }
+        }
+      }, null);
+    }
+  }
+
+  private LoxStream(LoxClass klass, Interpreter interpreter, Source source, Stage stage){
+    super(klass, interpreter);
+    this.source = source;
+    this.stage = stage;
+  }
+
+  // A stream over the elements of a list, array or string, the keys of a
+  // map, or what another stream gives.
+  static LoxInstance from(Interpreter interpreter, Object value) {
+    return new LoxStream(interpreter.streams, interpreter, sourceOf(value), null);
+  }
+
+  private LoxInstance then(Stage next) {
+    return new LoxStream(klass, interpreter, source, next);
+  }
+
+  private static Source sourceOf(final Object value) {
+    final LoxList list = LoxList.of(value);
+    if(list != null){
+      return new Source() {
+        @Override
+        public void run(Sink sink) {
+          for(int i = 0; i < list.size(); i++){
+            if(!sink.accept(list.at(i))) return;
+          }
+        }
+      };
+    }
+    final LoxMap map = LoxMap.of(value);
+    if(map != null){
+      return new Source() {
+        @Override
+        public void run(Sink sink) {
+          for(Object key : new ArrayList<>(map.keySet())){
+            if(!sink.accept(key)) return;
+          }
+        }
+      };
+    }
+    if(value instanceof LoxArray){
+      final LoxArray array = (LoxArray)value;
+      return new Source() {
+        @Override
+        public void run(Sink sink) {
+          for(int i = 0; i < array.getSize(); i++){
+            if(!sink.accept(array.get(i))) return;
+          }
+        }
+      };
+    }
+    if(value instanceof CharSequence){
+      final CharSequence string = (CharSequence)value;
+      return new Source() {
+        @Override
+        public void run(Sink sink) {
+          for(int i = 0; i < string.length(); i++){
+            if(!sink.accept(string.charAt(i))) return;
+          }
+        }
+      };
+    }
+    if(value instanceof LoxStream){
+      final LoxStream stream = (LoxStream)value;
+      return new Source() {
+        @Override
+        public void run(Sink sink) {
+          stream.into(sink);
+        }
+      };
+    }
+    throw new RuntimeError(Token.basic(), "Can't make a stream from '" + LoxType.typeOf(value) + "'");
+  }
+
+  // Runs the whole pipeline into sink, without ending it.
+  private boolean into(final Sink target) {
+    final boolean[] open = { true };
+    Sink sink = new Sink(null) {
+      @Override
+      boolean accept(Object value) {
+        return open[0] = target.accept(value);
+      }
+    };
+    run(sink);
+    return open[0];
+  }
+
+  private void run(Sink terminal) {
+    if(source == null) throw new RuntimeError(Token.basic(), "Stream has no values, make one with Stream::of, Stream::range or Stream::lines");
+    Sink sink = terminal;
+    for(Stage s = stage; s != null; s = s.previous) sink = s.sink(sink);
+    source.run(sink);
+    sink.end();
+  }
+
+  private LoxCallable function(Object value, int arity, String stage) {
+    if(!(value instanceof LoxCallable)) throw new RuntimeError(Token.basic(), "Stream " + stage + " takes a function, not '" + LoxType.typeOf(value) + "'");
+    LoxCallable function = (LoxCallable)value;
+    if(function.arity() != arity) throw new RuntimeError(Token.basic(), "Stream " + stage + " takes a function of " + arity + " argument" + (arity == 1 ? "" : "s"));
+    return function;
+  }
+
+  private Object call(LoxCallable function, Object a) {
+    List<Object> arguments = new ArrayList<>(1);
+    arguments.add(a);
+    return function.call(interpreter, arguments, Collections.<LoxClass>emptyList());
+  }
+
+  private Object call(LoxCallable function, Object a, Object b) {
+    List<Object> arguments = new ArrayList<>(2);
+    arguments.add(a);
+    arguments.add(b);
+    return function.call(interpreter, arguments, Collections.<LoxClass>emptyList());
+  }
+
+  @Native(shared = false)
+  LoxInstance map(Object mapper) {
+    final LoxCallable function = function(mapper, 1, "map");
+    return then(new Stage(stage) {
+      @Override
+      Sink sink(Sink downstream) {
+        return new Sink(downstream) {
+          @Override
+          boolean accept(Object value) {
+            return downstream.accept(call(function, value));
+          }
+        };
+      }
+    });
+  }
+
+  @Native(shared = false)
+  LoxInstance filter(Object predicate) {
+    final LoxCallable function = function(predicate, 1, "filter");
+    return then(new Stage(stage) {
+      @Override
+      Sink sink(Sink downstream) {
+        return new Sink(downstream) {
+          @Override
+          boolean accept(Object value) {
+            return !Interpreter.isTruthy(call(function, value)) || downstream.accept(value);
+          }
+        };
+      }
+    });
+  }
+
+  // Replaces each value with the elements of the list, array, string or
+  // stream the function gives for it.
+  @Native(shared = false)
+  LoxInstance flatMap(Object mapper) {
+    final LoxCallable function = function(mapper, 1, "flatMap");
+    return then(new Stage(stage) {
+      @Override
+      Sink sink(final Sink next) {
+        return new Sink(next) {
+          @Override
+          boolean accept(Object value) {
+            final boolean[] open = { true };
+            sourceOf(call(function, value)).run(new Sink(null) {
+              @Override
+              boolean accept(Object inner) {
+                return open[0] = next.accept(inner);
+              }
+            });
+            return open[0];
+          }
+        };
+      }
+    });
+  }
+
+  @Native(shared = false)
+  LoxInstance take(final int count) {
+    return then(new Stage(stage) {
+      @Override
+      Sink sink(Sink downstream) {
+        return new Sink(downstream) {
+          int taken = 0;
+
+          @Override
+          boolean accept(Object value) {
+            if(taken >= count) return false;
+            taken++;
+            return downstream.accept(value) && taken < count;
+          }
+        };
+      }
+    });
+  }
+
+  @Native(shared = false)
+  LoxInstance skip(final int count) {
+    return then(new Stage(stage) {
+      @Override
+      Sink sink(Sink downstream) {
+        return new Sink(downstream) {
+          int skipped = 0;
+
+          @Override
+          boolean accept(Object value) {
+            if(skipped < count){
+              skipped++;
+              return true;
+            }
+            return downstream.accept(value);
+          }
+        };
+      }
+    });
+  }
+
+  @Native(shared = false)
+  LoxInstance distinct() {
+    return then(new Stage(stage) {
+      @Override
+      Sink sink(Sink downstream) {
+        return new Sink(downstream) {
+          final Set<Object> seen = new HashSet<>();
+
+          @Override
+          boolean accept(Object value) {
+            return !seen.add(Rope.flatten(value)) || downstream.accept(value);
+          }
+        };
+      }
+    });
+  }
+
+  // Sorts nums or strings in their natural order.
+  @Native(shared = false)
+  LoxInstance sorted() {
+    return sorted(LoxList.natural());
+  }
+
+  // Sorts by a function of two values, like List's sortWith.
+  @Native(shared = false)
+  LoxInstance sortedWith(Object comparator) {
+    final LoxCallable function = function(comparator, 2, "sortedWith");
+    return sorted(new Comparator<Object>() {
+      @Override
+      public int compare(Object a, Object b) {
+        Object result = call(function, a, b);
+        if(!(result instanceof Double)) throw new RuntimeError(Token.basic(), "Sort function must return a num, not '" + LoxType.typeOf(result) + "'");
+        return Double.compare((Double)result, 0.0);
+      }
+    });
+  }
+
+  private LoxInstance sorted(final Comparator<Object> order) {
+    return then(new Stage(stage) {
+      @Override
+      Sink sink(Sink downstream) {
+        return new Sink(downstream) {
+          final List<Object> values = new ArrayList<>();
+
+          @Override
+          boolean accept(Object value) {
+            values.add(value);
+            return true;
+          }
+
+          @Override
+          void end() {
+            try{
+              values.sort(order);
+            }
+            catch(IllegalArgumentException e){
+              throw new RuntimeError(Token.basic(), "Sort function doesn't give a consistent order");
+            }
+            for(Object value : values){
+              if(!downstream.accept(value)) break;
+            }
+            values.clear();
+            downstream.end();
+          }
+        };
+      }
+    });
+  }
+
+  @Native(shared = false)
+  Object reduce(Object initial, Object reducer) {
+    final LoxCallable function = function(reducer, 2, "reduce");
+    final Object[] result = { initial };
+    run(new Sink(null) {
+      @Override
+      boolean accept(Object value) {
+        result[0] = call(function, result[0], value);
+        return true;
+      }
+    });
+    return result[0];
+  }
+
+  @Native(shared = false)
+  double count() {
+    final int[] count = { 0 };
+    run(new Sink(null) {
+      @Override
+      boolean accept(Object value) {
+        count[0]++;
+        return true;
+      }
+    });
+    return count[0];
+  }
+
+  // The values in a new List.
+  @Native(shared = false)
+  LoxInstance collect() {
+    final LoxList list = LoxList.create(interpreter);
+    run(new Sink(null) {
+      @Override
+      boolean accept(Object value) {
+        list.add(Rope.flatten(value));
+        return true;
+      }
+    });
+    return list;
+  }
+
+  @Native(shared = false)
+  void forEach(Object action) {
+    final LoxCallable function = function(action, 1, "forEach");
+    run(new Sink(null) {
+      @Override
+      boolean accept(Object value) {
+        call(function, value);
+        return true;
+      }
+    });
+  }
+}
@@ -1,9 +1,17 @@
 package com.nix.lox;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import javax.sound.sampled.AudioFileFormat.Type;
-
+/**
+ * A type is a kind plus a name. Types are immutable, and every distinct
+ * pair is interned in one table with an int id, so two types are the same
+ * exactly when their ids are. Values get their type through typeOf, which
+ * hands back the interned instance instead of building a new one.
+ */
 public class LoxType {
 
     public static enum TypeEnum {
@@ -16,134 +24,136 @@ public class LoxType {
         ANY
     }
 
-    public String name;
-    public TypeEnum type;
-    
-    public LoxType(Token name) {
-        this(name, new Modifiers());
-    }
+    private static final Map<String, LoxType> registry = new HashMap<>();
+    private static final List<LoxType> types = new ArrayList<>();
+
+    public static final LoxType NUMBER = of(TypeEnum.NUMBER, "num");
+    public static final LoxType STRING = of(TypeEnum.STRING, "string");
+    public static final LoxType BOOLEAN = of(TypeEnum.BOOLEAN, "bool");
+    public static final LoxType TYPE = of(TypeEnum.TYPE, "type");
+    public static final LoxType NULL = of(null, "null");
+    public static final LoxType UNKNOWN = of(TypeEnum.OBJECT, "null");
+
+    public final String name;
+    public final TypeEnum type;
+    private int id = -1;
+    // Ids of every class and interface this type can stand in for, itself
+    // included. Only class types have one.
+    private BitSet supertypes;
 
-    public LoxType(TypeEnum type, String name) {
+    private LoxType(TypeEnum type, String name) {
         this.name = name;
         this.type = type;
     }
 
-    public LoxType(Token name, Modifiers modifiers) {
-        this.name = name.lexeme;
+    public static LoxType of(Token name) {
+        return of(name, new Modifiers());
+    }
+
+    // The type a type keyword names. byte is a num with the BYTE modifier.
+    public static LoxType of(Token name, Modifiers modifiers) {
         switch (name.type) {
             case STRPARAM:
-                this.type = TypeEnum.STRING;
-                break;
+                return of(TypeEnum.STRING, name.lexeme);
             case NUMPARAM:
-                this.type = TypeEnum.NUMBER;
-                break;
+                return NUMBER;
             case BOOLEAN:
-                this.type = TypeEnum.BOOLEAN;
-                break;
+                return of(TypeEnum.BOOLEAN, name.lexeme);
             case VOID:
-                this.type = TypeEnum.VOID;
-                break;
+                return of(TypeEnum.VOID, name.lexeme);
             case OBJPARAM:
-                this.type = TypeEnum.OBJECT;
-                break;
+                return of(TypeEnum.OBJECT, name.lexeme);
             case BYTE:
-                this.type = TypeEnum.NUMBER;
-                this.name = "num";
                 modifiers.add(TokenType.BYTE);
-                break;
+                return NUMBER;
             case TYPE:
-                this.type = TypeEnum.TYPE;
-                break;
+                return of(TypeEnum.TYPE, name.lexeme);
             case ANY:
-                this.type = TypeEnum.ANY;
-                break;
+                return of(TypeEnum.ANY, name.lexeme);
             default:
                 throw new RuntimeException("Invalid type " + name.type);
         }
     }
 
-    public boolean isObject() {
-        return type == TypeEnum.OBJECT;
+    public static LoxType of(TypeEnum type, String name) {
+        String key = type + " " + name;
+        LoxType interned = registry.get(key);
+        if(interned == null){
+            interned = new LoxType(type, name);
+            interned.id = types.size();
+            types.add(interned);
+            registry.put(key, interned);
+        }
+        return interned;
     }
 
-    public LoxType(String name, TypeEnum type) {
-        this.name = name;
-        this.type = type;
+    public static LoxType typeOf(Object value) {
+        if(value == null) return NULL;
+        if(value instanceof Double || value instanceof Integer) return NUMBER;
+        if(value instanceof String || value instanceof Rope || value instanceof Character) return STRING;
+        if(value instanceof Boolean) return BOOLEAN;
+        if(value instanceof LoxInstance) return ((LoxInstance)value).klass.type();
+        if(value instanceof LoxClass) return ((LoxClass)value).type();
+        if(value instanceof LoxType) return TYPE;
+        if(value instanceof LoxFunction) return ((LoxFunction)value).type();
+        if(value instanceof LoxArray) return ((LoxArray)value).getType();
+        if(value instanceof LoxProperty) {
+            return of(TypeEnum.OBJECT, "property:" + ((LoxProperty)value).getType().name);
+        }
+        return UNKNOWN;
     }
 
-    public LoxType(Object value) {
-        if(value != null){
-            if(value instanceof String || value instanceof Character){
-                this.type = TypeEnum.STRING;
-                this.name = "string";
-            }
-            else if(value instanceof Double || value instanceof Integer){
-                this.type = TypeEnum.NUMBER;
-                this.name = "num";
-            }
-            else if(value instanceof Boolean){
-                this.type = TypeEnum.BOOLEAN;
-                this.name = "bool";
-            }
-            else
-                this.type = TypeEnum.OBJECT;
-
-            if(value instanceof LoxType) {
-                // this.name = ((LoxType)value).name;
-                // this.type = ((LoxType)value).type;
-                this.name = "type";
-                this.type = TypeEnum.TYPE;
-                return;
-            }
-            else if(value instanceof LoxClass) {
-                name = ((LoxClass)value).name;
-            }
-            else if (value instanceof LoxInstance) {
-                name = ((LoxInstance)value).klass.name;
-            }
-            else if(value instanceof LoxFunction) {
-                String lexame = "func(";
-                for(Parameter t : ((LoxFunction)value).declaration.params) {
-                    lexame += t.type.name + ", ";
-                }
-                if(((LoxFunction)value).declaration.params.size() > 0) lexame = lexame.substring(0, lexame.length() - 2);
-                name = lexame + "):"+((LoxFunction)value).declaration.returnType.name;
-            }
-            else if(value instanceof LoxProperty) {
-                name = "property:" + ((LoxProperty)value).getType().name;
-            }
-            else if(value instanceof LoxArray) {
-                name = ((LoxArray)value).getType().name;
-                type = ((LoxArray)value).getType().type;
-            }
-            if(name == null) {
-                this.name = "null";
-            }
-        } 
-        else this.name = "null"; 
+    public LoxType intern() {
+        return of(type, name);
     }
 
+    public int id() {
+        if(id == -1) id = intern().id;
+        return id;
+    }
+
+    public boolean isObject() {
+        return type == TypeEnum.OBJECT;
+    }
+
+    private boolean isNull() {
+        return name.equals("null");
+    }
 
     public boolean matches(LoxType other) {
-        
+        if(this == other) return true;
         if(this.type == TypeEnum.ANY || other.type == TypeEnum.ANY) return true;
+        if(id() == other.id()) return true;
         if(this.type == TypeEnum.OBJECT && other.type == TypeEnum.OBJECT) {
-            if(this.name == "null" || other.name == "null") return true;
-            return this.name.equals(other.name);
+            return isNull() || other.isNull();
         }
-        if(this.type == TypeEnum.VOID){
-            if(other.name == "null") return true;
-        }
-        else if(other.type == TypeEnum.VOID){
-            if(this.name == "null") return true;
-        }   
-        return this.type == other.type && this.name.equals(other.name);
+        if(this.type == TypeEnum.VOID) return other.isNull();
+        if(other.type == TypeEnum.VOID) return isNull();
+        return false;
     }
 
     public boolean mismatch(LoxType other) {
         return !matches(other);
     }
 
+    // 'is' also accepts a superclass or an implemented interface.
+    public boolean is(LoxType other) {
+        if(matches(other)) return true;
+        BitSet supers = intern().supertypes;
+        return supers != null && supers.get(other.id());
+    }
+
+    void inherit(LoxType supertype) {
+        LoxType self = intern();
+        if(self.supertypes == null){
+            self.supertypes = new BitSet();
+            self.supertypes.set(self.id);
+        }
+        LoxType parent = supertype.intern();
+        self.supertypes.set(parent.id);
+        if(parent.supertypes != null) self.supertypes.or(parent.supertypes);
+    }
+
     public String toString() {
         return type + " " + name;
     }
@@ -0,0 +1,23 @@
+package com.nix.lox;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a Java method of a native class as a Lox function. See
+ * {@link NativeMethod#bind} for the parameter and return types it can use.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface Native {
+  // The Lox name, when it isn't the Java one.
+  String value() default "";
+
+  // Shared natives are called on the class, like Math::sqrt(x).
+  boolean shared() default true;
+
+  // Operator natives back an operator instead, like getAt for list[i].
+  boolean operator() default false;
+}
@@ -0,0 +1,34 @@
+package com.nix.lox;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The one class every value of a native type is an instance of, for types
+ * like List whose state lives in each instance. Its methods are the natives
+ * of the instance type, which run on whichever instance they're called on,
+ * plus any shared natives a subclass declares, so making a value never
+ * makes a class.
+ */
+abstract class NativeClass extends LoxNative{
+
+  NativeClass(String name, Class<? extends LoxInstance> values, Environment environment, Interpreter interpreter){
+    super(null, null, null, null, null);
+    Map<String, LoxFunction> methods = NativeMethod.bind(this, environment);
+    methods.putAll(NativeMethod.bindInstance(values, environment));
+    setDetails(name, new LoxObject(environment, interpreter, name, this), methods, interpreter);
+  }
+
+  // A new, empty value.
+  abstract LoxInstance create();
+
+  @Override
+  Object instantiate(Interpreter interpreter, List<Object> arguments, List<LoxClass> templates, LoxFunction initializer, boolean checked) {
+    return create();
+  }
+
+  @Override
+  public void defineFields() {
+
+  }
+}
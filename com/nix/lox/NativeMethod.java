@@ -0,0 +1,243 @@
+package com.nix.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.nix.lox.LoxType.TypeEnum;
+
+/**
+ * A native function backed by a Java method marked {@link Native}. The
+ * method is reached through a MethodHandle that takes Lox values as they
+ * are: call0/1/2 pass them straight through without building an argument
+ * list, and the handle itself checks and unboxes num, bool and string
+ * parameters and boxes the result.
+ *
+ * Parameters can be double, int (a num, truncated), boolean, String or any
+ * reference type, which gets the value unchecked (Object parameters get
+ * strings flattened to String). Results can be double,
+ * boolean, void or any reference type.
+ *
+ * Every handle takes the instance the native is called on first. Natives
+ * of a native class ignore it; natives declared on a LoxInstance subclass,
+ * like List's, run on it, so the values of such a type share one class.
+ */
+class NativeMethod implements LoxCallable {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  // Found once per native class: its marked methods with their handles,
+  // taking the receiver first when the method isn't static.
+  private static final ClassValue<List<Binding>> bindings = new ClassValue<List<Binding>>() {
+    @Override
+    protected List<Binding> computeValue(Class<?> type) {
+      List<Binding> found = new ArrayList<>();
+      for(Method method : type.getDeclaredMethods()){
+        Native annotation = method.getAnnotation(Native.class);
+        if(annotation != null) found.add(new Binding(method, annotation));
+      }
+      return found;
+    }
+  };
+
+  private static class Binding {
+    final String name;
+    final Method method;
+    final boolean isStatic;
+    final MethodHandle handle;
+    final LoxType returnType;
+    final Modifiers modifiers;
+    // A method of a LoxInstance subclass, run on the instance.
+    final boolean onInstance;
+
+    Binding(Method method, Native annotation){
+      this.name = annotation.value().isEmpty() ? method.getName() : annotation.value();
+      this.method = method;
+      this.isStatic = Modifier.isStatic(method.getModifiers());
+      this.onInstance = !isStatic && LoxInstance.class.isAssignableFrom(method.getDeclaringClass());
+      this.returnType = loxType(method.getReturnType());
+      this.modifiers = annotation.shared() ? new Modifiers(TokenType.STATIC) : new Modifiers();
+      modifiers.add(TokenType.OPERATOR, annotation.operator());
+      try{
+        MethodHandle handle = LOOKUP.unreflect(method);
+        int first = isStatic ? 0 : 1;
+        Class<?>[] params = method.getParameterTypes();
+        for(int i = 0; i < params.length; i++){
+          MethodHandle converter = converter(params[i], name, i);
+          if(converter != null) handle = MethodHandles.filterArguments(handle, first + i, converter);
+        }
+        this.handle = handle.asType(MethodType.genericMethodType(first + params.length));
+      }
+      catch(IllegalAccessException e){
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  final String name;
+  // The static Java method behind this native, for code that can call it
+  // directly. Null for methods that need their native object.
+  final Method method;
+  // Runs on the instance it's called on rather than on its native class.
+  final boolean onInstance;
+  private final int arity;
+  private final MethodHandle handle;
+  private final MethodHandle spread;
+
+  private NativeMethod(Binding binding, MethodHandle handle){
+    this.name = binding.name;
+    this.method = binding.isStatic ? binding.method : null;
+    this.onInstance = binding.onInstance;
+    this.arity = binding.method.getParameterCount();
+    this.handle = handle;
+    this.spread = handle.asSpreader(1, Object[].class, arity);
+  }
+
+  // The natives of target's class by Lox name, bound to target unless they
+  // run on the instance they're called on.
+  static Map<String, LoxFunction> bind(Object target, Environment environment){
+    return bind(target.getClass(), target, environment);
+  }
+
+  // The natives of an instance type, which all run on their instance.
+  static Map<String, LoxFunction> bindInstance(Class<? extends LoxInstance> type, Environment environment){
+    return bind(type, null, environment);
+  }
+
+  private static Map<String, LoxFunction> bind(Class<?> type, Object target, Environment environment){
+    Map<String, LoxFunction> methods = new HashMap<>();
+    for(Binding binding : bindings.get(type)){
+      MethodHandle handle = binding.handle;
+      if(!binding.onInstance){
+        if(!binding.isStatic) handle = handle.bindTo(target);
+        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+      }
+      methods.put(binding.name, new LoxFunction(new NativeMethod(binding, handle), environment, false, binding.returnType, binding.modifiers));
+    }
+    return methods;
+  }
+
+  private static LoxType loxType(Class<?> type){
+    if(type == double.class) return LoxType.NUMBER;
+    if(type == boolean.class) return LoxType.BOOLEAN;
+    if(type == String.class) return LoxType.STRING;
+    if(type == void.class) return LoxType.of(TypeEnum.VOID, "void");
+    if(type.isPrimitive()) throw new IllegalArgumentException("Natives can't return " + type);
+    return LoxType.of(TypeEnum.ANY, "any");
+  }
+
+  private static MethodHandle converter(Class<?> type, String function, int index) throws IllegalAccessException {
+    String name;
+    if(type == double.class) name = "number";
+    else if(type == int.class) name = "integer";
+    else if(type == boolean.class) name = "bool";
+    else if(type == String.class) name = "string";
+    else if(type.isPrimitive()) throw new IllegalArgumentException("Natives can't take " + type);
+    else if(type == Object.class) name = "value";
+    else return null;
+    try{
+      MethodHandle converter = LOOKUP.findStatic(NativeMethod.class, name, MethodType.methodType(type, String.class, int.class, Object.class));
+      return MethodHandles.insertArguments(converter, 0, function, index);
+    }
+    catch(NoSuchMethodException e){
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static double number(String function, int index, Object value){
+    if(value instanceof Double) return (Double)value;
+    if(value instanceof Integer) return (Integer)value;
+    throw argumentError(function, index, LoxType.NUMBER, value);
+  }
+
+  private static int integer(String function, int index, Object value){
+    return (int)number(function, index, value);
+  }
+
+  private static boolean bool(String function, int index, Object value){
+    if(value instanceof Boolean) return (Boolean)value;
+    throw argumentError(function, index, LoxType.BOOLEAN, value);
+  }
+
+  private static String string(String function, int index, Object value){
+    if(Rope.isString(value)) return value.toString();
+    throw argumentError(function, index, LoxType.STRING, value);
+  }
+
+  // Natives see strings built by concatenation as plain Strings.
+  private static Object value(String function, int index, Object value){
+    return Rope.flatten(value);
+  }
+
+  private static RuntimeError argumentError(String function, int index, LoxType expected, Object value){
+    return new RuntimeError(Token.basic(), "Expected type '" + expected + "' for argument " + (index + 1) + " of native '" + function + "' but got type '" + LoxType.typeOf(value) + "' instead");
+  }
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, List<Object> arguments, List<LoxClass> generics) {
+    return callN(null, arguments);
+  }
+
+  // The receiver is the instance the native was called on, or null.
+  Object call0(LoxInstance receiver){
+    try{
+      return (Object)handle.invokeExact(instance(receiver));
+    }
+    catch(Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  Object call1(LoxInstance receiver, Object a){
+    try{
+      return (Object)handle.invokeExact(instance(receiver), a);
+    }
+    catch(Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  Object call2(LoxInstance receiver, Object a, Object b){
+    try{
+      return (Object)handle.invokeExact(instance(receiver), a, b);
+    }
+    catch(Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  Object callN(LoxInstance receiver, List<Object> arguments){
+    try{
+      return (Object)spread.invokeExact(instance(receiver), arguments.toArray());
+    }
+    catch(Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  private Object instance(LoxInstance receiver){
+    if(onInstance && receiver == null) throw new RuntimeError(Token.basic(), "Native '" + name + "' has to be called on an instance");
+    return receiver;
+  }
+
+  private static RuntimeException rethrow(Throwable e){
+    if(e instanceof RuntimeException) return (RuntimeException)e;
+    if(e instanceof Error) throw (Error)e;
+    return new IllegalStateException(e);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,545 @@
+package com.nix.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites the parsed tree before it is resolved. Operators whose operands
+ * are all literals are evaluated once here, conditions that are literals
+ * pick their branch, statements after a return, break or continue are
+ * dropped, and so are locals that are never mentioned and whose
+ * initializer can't do anything. Reads of a 'fixed' global declared with a
+ * literal are replaced by that literal.
+ *
+ * Nodes are only rebuilt when one of their children changed, and anything
+ * that might fail or have an effect at runtime is left for the runtime.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  private final Interpreter interpreter;
+  // Names declared in the enclosing functions and blocks, innermost last.
+  private final List<Set<String>> scopes = new ArrayList<>();
+  private final Map<String, Object> constants = new HashMap<>();
+  // Every name read or assigned anywhere. Shadowing only makes this keep more.
+  private final Set<String> used = new HashSet<>();
+
+  Optimizer(Interpreter interpreter){
+    this.interpreter = interpreter;
+  }
+
+  List<Stmt> optimize(List<Stmt> statements){
+    List<Stmt> result = new ArrayList<>();
+    for(Stmt statement : statements){
+      Stmt optimized = optimize(statement);
+      if(optimized != null) result.add(optimized);
+    }
+    return result;
+  }
+
+  private Stmt optimize(Stmt stmt){
+    return stmt.accept(this);
+  }
+
+  private Expr optimize(Expr expr){
+    if(expr == null) return null;
+    return expr.accept(this);
+  }
+
+  // Where the grammar needs a statement, a removed one becomes an empty block.
+  private Stmt required(Stmt stmt){
+    if(stmt == null) return null;
+    Stmt optimized = optimize(stmt);
+    return optimized == null ? new Stmt.Block(new ArrayList<Stmt>()) : optimized;
+  }
+
+  private List<Expr> optimizeAll(List<Expr> exprs){
+    List<Expr> result = null;
+    for(int i = 0; i < exprs.size(); i++){
+      Expr optimized = optimize(exprs.get(i));
+      if(optimized != exprs.get(i) && result == null) result = new ArrayList<>(exprs.subList(0, i));
+      if(result != null) result.add(optimized);
+    }
+    return result == null ? exprs : result;
+  }
+
+  // The body of a block or function, whose names go in the innermost scope.
+  private List<Stmt> body(List<Stmt> statements){
+    List<Stmt> result = new ArrayList<>();
+    for(Stmt statement : statements){
+      Stmt optimized = optimize(statement);
+      if(optimized == null) continue;
+      result.add(optimized);
+      if(optimized instanceof Stmt.Return || optimized instanceof Stmt.Break || optimized instanceof Stmt.Continue) break;
+    }
+    // Only now is every later read of a local known.
+    for(int i = result.size() - 1; i >= 0; i--){
+      if(result.get(i) instanceof Stmt.Var && unused((Stmt.Var)result.get(i))) result.remove(i);
+    }
+    return result;
+  }
+
+  private boolean unused(Stmt.Var stmt){
+    if(used.contains(stmt.name.lexeme)) return false;
+    if(stmt.modifiers.contains(TokenType.STATIC) || stmt.modifiers.contains(TokenType.UNSIGNED) || stmt.modifiers.contains(TokenType.BYTE)) return false;
+    return stmt.initializer == null || literalOf(stmt.initializer, stmt.type);
+  }
+
+  // A literal that the variable's type check would accept.
+  private static boolean literalOf(Expr expr, LoxType type){
+    if(!(expr instanceof Expr.Literal)) return false;
+    Object value = ((Expr.Literal)expr).value;
+    return value == null || !LoxType.typeOf(value).mismatch(type);
+  }
+
+  private void beginScope(){
+    scopes.add(new HashSet<String>());
+  }
+
+  private void endScope(){
+    scopes.remove(scopes.size() - 1);
+  }
+
+  private void declare(Token name){
+    if(scopes.isEmpty()){
+      // Anything else declared under the constant's name makes it unsafe to inline.
+      constants.remove(name.lexeme);
+      return;
+    }
+    scopes.get(scopes.size() - 1).add(name.lexeme);
+  }
+
+  private boolean isLocal(String name){
+    for(Set<String> scope : scopes){
+      if(scope.contains(name)) return true;
+    }
+    return false;
+  }
+
+  private Stmt.Function function(Stmt.Function stmt){
+    if(stmt == null || stmt.body == null) return stmt;
+    beginScope();
+    for(Parameter param : stmt.params){
+      scopes.get(scopes.size() - 1).add(param.name.lexeme);
+    }
+    List<Stmt> body = body(stmt.body);
+    endScope();
+    return new Stmt.Function(stmt.name, stmt.extClass, stmt.params, body, stmt.modifiers, stmt.hasBody, stmt.returnType);
+  }
+
+  private List<Stmt.Function> functions(List<Stmt.Function> functions){
+    List<Stmt.Function> result = new ArrayList<>();
+    for(Stmt.Function function : functions){
+      result.add(function(function));
+    }
+    return result;
+  }
+
+  // Fields keep their declarations; only what they're initialized with is folded.
+  private List<Stmt.Var> fields(List<Stmt.Var> fields){
+    List<Stmt.Var> result = new ArrayList<>();
+    for(Stmt.Var field : fields){
+      Expr initializer = optimize(field.initializer);
+      result.add(initializer == field.initializer ? field : new Stmt.Var(field.name, initializer, field.modifiers, field.type));
+    }
+    return result;
+  }
+
+  private Stmt.Property property(Stmt.Property stmt){
+    beginScope();
+    scopes.get(scopes.size() - 1).add("value");
+    Stmt.Function get = function(stmt.get);
+    Stmt.Function set = function(stmt.set);
+    endScope();
+    return new Stmt.Property(stmt.name, stmt.modifiers, stmt.type, get, set);
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    beginScope();
+    List<Stmt> statements = body(stmt.statements);
+    endScope();
+    return new Stmt.Block(statements);
+  }
+
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    declare(stmt.name);
+    if(stmt.superclass != null) used.add(stmt.superclass.name.lexeme);
+    beginScope();
+    Set<String> scope = scopes.get(scopes.size() - 1);
+    scope.add("this");
+    scope.add("super");
+    for(Token template : stmt.templates){
+      scope.add(template.lexeme);
+    }
+    for(Stmt.Var field : stmt.variables){
+      scope.add(field.name.lexeme);
+    }
+    for(Stmt.Property prop : stmt.props){
+      scope.add(prop.name.lexeme);
+    }
+    List<Stmt.Function> methods = functions(stmt.methods);
+    List<Stmt.Var> variables = fields(stmt.variables);
+    List<Stmt.Property> props = new ArrayList<>();
+    for(Stmt.Property prop : stmt.props){
+      props.add(property(prop));
+    }
+    endScope();
+    return new Stmt.Class(stmt.name, stmt.superclass, methods, variables, props, stmt.templates, stmt.interfase);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    Expr expression = optimize(stmt.expression);
+    return expression == stmt.expression ? stmt : new Stmt.Expression(expression);
+  }
+
+  @Override
+  public Stmt visitFunctionStmt(Stmt.Function stmt) {
+    if(stmt.extClass == null) declare(stmt.name);
+    return function(stmt);
+  }
+
+  @Override
+  public Stmt visitIfStmt(Stmt.If stmt) {
+    Expr condition = optimize(stmt.condition);
+    if(condition instanceof Expr.Literal){
+      Stmt branch = Interpreter.isTruthy(((Expr.Literal)condition).value) ? stmt.thenBranch : stmt.elseBranch;
+      return branch == null ? null : optimize(branch);
+    }
+    return new Stmt.If(condition, required(stmt.thenBranch), stmt.elseBranch == null ? null : optimize(stmt.elseBranch));
+  }
+
+  @Override
+  public Stmt visitWhenStmt(Stmt.When stmt) {
+    return new Stmt.When(optimize(stmt.condition), required(stmt.thenBranch), required(stmt.finallyBranch));
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    Expr value = optimize(stmt.value);
+    return value == stmt.value ? stmt : new Stmt.Return(stmt.keyword, value);
+  }
+
+  @Override
+  public Stmt visitExpectStmt(Stmt.Expect stmt) {
+    Expr value = optimize(stmt.value);
+    return value == stmt.value ? stmt : new Stmt.Expect(stmt.keyword, value);
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    Expr initializer = optimize(stmt.initializer);
+    declare(stmt.name);
+    if(scopes.isEmpty() && stmt.modifiers.contains(TokenType.CONST) && !stmt.modifiers.contains(TokenType.UNSIGNED)
+      && !stmt.modifiers.contains(TokenType.BYTE) && literalOf(initializer, stmt.type)){
+      Object value = ((Expr.Literal)initializer).value;
+      if(value != null) constants.put(stmt.name.lexeme, value);
+    }
+    return initializer == stmt.initializer ? stmt : new Stmt.Var(stmt.name, initializer, stmt.modifiers, stmt.type);
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    Expr condition = optimize(stmt.condition);
+    if(condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal)condition).value)) return null;
+    return new Stmt.While(condition, required(stmt.body));
+  }
+
+  @Override
+  public Stmt visitForEachStmt(Stmt.ForEach stmt) {
+    Expr iterable = optimize(stmt.iterable);
+    beginScope();
+    scopes.get(scopes.size() - 1).add(stmt.variable.name.lexeme);
+    Stmt body = required(stmt.body);
+    endScope();
+    return new Stmt.ForEach(stmt.keyword, stmt.variable, iterable, body);
+  }
+
+  @Override
+  public Stmt visitTestStmt(Stmt.Test stmt) {
+    return new Stmt.Test(stmt.name, required(stmt.body));
+  }
+
+  @Override
+  public Stmt visitGetFileStmt(Stmt.GetFile stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitModuleStmt(Stmt.Module stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitInterfaceStmt(Stmt.Interface stmt) {
+    declare(stmt.name);
+    beginScope();
+    List<Stmt.Function> methods = functions(stmt.methods);
+    endScope();
+    return new Stmt.Interface(stmt.name, methods, stmt.variables);
+  }
+
+  @Override
+  public Stmt visitEnumStmt(Stmt.Enum stmt) {
+    declare(stmt.name);
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitSwitchStmt(Stmt.Switch stmt) {
+    Expr value = optimize(stmt.value);
+    List<Stmt.Case> cases = new ArrayList<>();
+    for(Stmt.Case c : stmt.cases){
+      cases.add((Stmt.Case)optimize(c));
+    }
+    Stmt.Case defaultCase = stmt.defaultCase == null ? null : (Stmt.Case)optimize(stmt.defaultCase);
+    return new Stmt.Switch(value, cases, defaultCase);
+  }
+
+  @Override
+  public Stmt visitCaseStmt(Stmt.Case stmt) {
+    return new Stmt.Case(optimize(stmt.value), required(stmt.body));
+  }
+
+  @Override
+  public Stmt visitBreakStmt(Stmt.Break stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitContinueStmt(Stmt.Continue stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitPropertyStmt(Stmt.Property stmt) {
+    declare(stmt.name);
+    return property(stmt);
+  }
+
+  @Override
+  public Stmt visitTryStmt(Stmt.Try stmt) {
+    Stmt tryBranch = required(stmt.tryBranch);
+    beginScope();
+    if(stmt.exName != null) declare(stmt.exName);
+    List<Stmt> catchBranch = body(stmt.catchBranch);
+    endScope();
+    return new Stmt.Try(tryBranch, catchBranch, stmt.exName);
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    used.add(expr.name.lexeme);
+    Expr value = optimize(expr.value);
+    return value == expr.value ? expr : new Expr.Assign(expr.name, value, expr.type);
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    Expr left = optimize(expr.left);
+    Expr right = optimize(expr.right);
+    if(left instanceof Expr.Literal && right instanceof Expr.Literal && foldable(expr.operator.type)){
+      try{
+        return new Expr.Literal(Rope.flatten(interpreter.binary(expr.operator, ((Expr.Literal)left).value, ((Expr.Literal)right).value)));
+      }
+      catch(RuntimeException e){
+        // Leave it to fail, with its proper message, when it runs.
+      }
+    }
+    return left == expr.left && right == expr.right ? expr : new Expr.Binary(left, expr.operator, right);
+  }
+
+  private static boolean foldable(TokenType type){
+    switch(type){
+      case PLUS: case MINUS: case STAR: case SLASH:
+      case GREATER: case GREATER_EQUAL: case LESS: case LESS_EQUAL:
+      case EQUAL_EQUAL: case BANG_EQUAL:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    Expr callee = optimize(expr.callee);
+    List<Expr> arguments = optimizeAll(expr.arguments);
+    if(callee == expr.callee && arguments == expr.arguments) return expr;
+    return new Expr.Call(callee, expr.paren, arguments, expr.nullCheck, expr.templates);
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    Expr object = optimize(expr.object);
+    return object == expr.object ? expr : new Expr.Get(object, expr.name);
+  }
+
+  @Override
+  public Expr visitGetIndexExpr(Expr.GetIndex expr) {
+    Expr object = optimize(expr.object);
+    Expr index = optimize(expr.index);
+    return object == expr.object && index == expr.index ? expr : new Expr.GetIndex(object, index, expr.name);
+  }
+
+  @Override
+  public Expr visitGetStaticExpr(Expr.GetStatic expr) {
+    Expr object = optimize(expr.object);
+    return object == expr.object ? expr : new Expr.GetStatic(object, expr.name);
+  }
+
+  @Override
+  public Expr visitSetAssignExpr(Expr.SetAssign expr) {
+    Expr object = optimize(expr.object);
+    Expr value = optimize(expr.value);
+    return object == expr.object && value == expr.value ? expr : new Expr.SetAssign(object, expr.name, value);
+  }
+
+  @Override
+  public Expr visitCoalesceExpr(Expr.Coalesce expr) {
+    Expr object = optimize(expr.object);
+    return object == expr.object ? expr : new Expr.Coalesce(object, expr.name);
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    Expr expression = optimize(expr.expression);
+    if(expression instanceof Expr.Literal) return expression;
+    return expression == expr.expression ? expr : new Expr.Grouping(expression);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    Expr left = optimize(expr.left);
+    Expr right = optimize(expr.right);
+    if(left instanceof Expr.Literal && (expr.operator.type == TokenType.OR || expr.operator.type == TokenType.AND)){
+      boolean truthy = Interpreter.isTruthy(((Expr.Literal)left).value);
+      // The same value the interpreter would produce: the left one if it decides, else the right.
+      if(expr.operator.type == TokenType.OR ? truthy : !truthy) return left;
+      return right;
+    }
+    return left == expr.left && right == expr.right ? expr : new Expr.Logical(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    Expr object = optimize(expr.object);
+    Expr value = optimize(expr.value);
+    return object == expr.object && value == expr.value ? expr : new Expr.Set(object, expr.name, value);
+  }
+
+  @Override
+  public Expr visitSetIndexExpr(Expr.SetIndex expr) {
+    Expr object = optimize(expr.object);
+    Expr value = optimize(expr.value);
+    Expr index = optimize(expr.index);
+    if(object == expr.object && value == expr.value && index == expr.index) return expr;
+    return new Expr.SetIndex(object, expr.name, value, index);
+  }
+
+  @Override
+  public Expr visitSuperExpr(Expr.Super expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitValueExpr(Expr.Value expr) {
+    used.add("value");
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    Expr right = optimize(expr.right);
+    if(right instanceof Expr.Literal){
+      try{
+        return new Expr.Literal(interpreter.unary(expr.operator, ((Expr.Literal)right).value));
+      }
+      catch(RuntimeException e){
+        // Left to fail at runtime.
+      }
+    }
+    return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    used.add(expr.name.lexeme);
+    if(constants.containsKey(expr.name.lexeme) && !isLocal(expr.name.lexeme)){
+      return new Expr.Literal(constants.get(expr.name.lexeme));
+    }
+    return expr;
+  }
+
+  @Override
+  public Expr visitNewExpr(Expr.New expr) {
+    Expr callee = optimize(expr.callee);
+    List<Expr> arguments = optimizeAll(expr.arguments);
+    if(callee == expr.callee && arguments == expr.arguments) return expr;
+    return new Expr.New(expr.keyword, callee, expr.paren, arguments);
+  }
+
+  @Override
+  public Expr visitTypeofExpr(Expr.Typeof expr) {
+    Expr value = optimize(expr.value);
+    return value == expr.value ? expr : new Expr.Typeof(value);
+  }
+
+  @Override
+  public Expr visitLengthExpr(Expr.Length expr) {
+    Expr value = optimize(expr.value);
+    return value == expr.value ? expr : new Expr.Length(value, expr.name);
+  }
+
+  @Override
+  public Expr visitAnonymousFunctionExpr(Expr.AnonymousFunction expr) {
+    beginScope();
+    for(Parameter param : expr.params){
+      scopes.get(scopes.size() - 1).add(param.name.lexeme);
+    }
+    List<Stmt> body = body(expr.body);
+    endScope();
+    return new Expr.AnonymousFunction(expr.params, body, expr.returnType);
+  }
+
+  @Override
+  public Expr visitCastExpr(Expr.Cast expr) {
+    Expr value = optimize(expr.value);
+    return value == expr.value ? expr : new Expr.Cast(expr.operator, value, expr.castType);
+  }
+
+  @Override
+  public Expr visitArrayExpr(Expr.Array expr) {
+    List<Expr> values = expr.values == null ? null : optimizeAll(expr.values);
+    Expr size = optimize(expr.size);
+    if(values == expr.values && size == expr.size) return expr;
+    return new Expr.Array(expr.type, values, size);
+  }
+
+  @Override
+  public Expr visitTernaryExpr(Expr.Ternary expr) {
+    Expr condition = optimize(expr.condition);
+    if(condition instanceof Expr.Literal){
+      return optimize(Interpreter.isTruthy(((Expr.Literal)condition).value) ? expr.thenBranch : expr.elseBranch);
+    }
+    return new Expr.Ternary(expr.operator, condition, optimize(expr.thenBranch), optimize(expr.elseBranch));
+  }
+
+  @Override
+  public Expr visitTypeExpr(Expr.Type expr) {
+    return expr;
+  }
+}
@@ -65,18 +65,20 @@ public class Parser {
       }
     }
 
-    private void expandType(LoxType type, boolean findBracket) {
+    private LoxType expandType(LoxType type, boolean findBracket) {
+      String name = type.name;
       if(type.type == TypeEnum.OBJECT) {
         if(match(FUN)) {
-          type.name = getFuncPtr();
+          name = getFuncPtr();
         }
         else{
-          type.name = consume(IDENTIFIER, "Expect type name after obj").lexeme;
+          name = consume(IDENTIFIER, "Expect type name after obj").lexeme;
         }
       }
       if(match(LEFT_BRACKET)) {
-        if(findBracket) type.name += arrayType();
+        if(findBracket) name += arrayType();
       }
+      return LoxType.of(type.type, name);
     }
 
     public String arrayType() {
@@ -91,10 +93,9 @@ public class Parser {
     public LoxType checkType(Modifiers modifiers, boolean findBracket) {
       for(TokenType t : types){
         if(check(t)) {
-          LoxType type = new LoxType(peek(), modifiers);
+          LoxType type = LoxType.of(peek(), modifiers);
           advance();
-          expandType(type, findBracket);
-          return type;
+          return expandType(type, findBracket);
         }
       }
       return null;
@@ -115,9 +116,8 @@ public class Parser {
     public LoxType matchType(Modifiers modifiers, boolean findBracket) {
       for(TokenType t : types){
         if(match(t)) {
-          LoxType type = new LoxType(previous(), modifiers);
-          expandType(type, findBracket);
-          return type;
+          LoxType type = LoxType.of(previous(), modifiers);
+          return expandType(type, findBracket);
         }
       }
       return null;
@@ -152,17 +152,18 @@ public class Parser {
       if(!check(RIGHT_PAREN)){
         do{
           numParams++;
-          LoxType type = new LoxType(advance());
+          LoxType type = LoxType.of(advance());
+          String typeName = type.name;
           if(type.type == TypeEnum.OBJECT)
           {
             if(match(FUN)) {
-              type.name = getFuncPtr();
+              typeName = getFuncPtr();
             }
             else{
-              type.name = consume(IDENTIFIER, "Expect type name after 'obj'.").lexeme;
+              typeName = consume(IDENTIFIER, "Expect type name after 'obj'.").lexeme;
             }
           }
-          name += type.name + ", ";
+          name += typeName + ", ";
         } while (match(COMMA));
       }
       consume(RIGHT_PAREN, "Expect ')' after parameter types");
@@ -637,8 +638,11 @@ public class Parser {
     }
 
     private Stmt forStatement(){
+      Token keyword = previous();
       consume(LEFT_PAREN, "Expect '(' after 'for'.");
-      
+      Stmt forEach = forEachStatement(keyword);
+      if(forEach != null) return forEach;
+
       Stmt initializer;
       LoxType type = null;
       if(match(SEMICOLON)){
@@ -679,6 +683,25 @@ public class Parser {
       return body;
     }
 
+    // for(type name in iterable), where the type can be left out for any.
+    // Returns null, having consumed nothing, when the loop isn't one.
+    private Stmt forEachStatement(Token keyword){
+      int start = current;
+      Modifiers modifiers = new Modifiers();
+      LoxType type = matchType(modifiers);
+      if(!check(IDENTIFIER) || peekNext() == null || peekNext().type != IDENTIFIER || !peekNext().lexeme.equals("in")){
+        current = start;
+        return null;
+      }
+      Token name = advance();
+      advance();
+      if(type == null) type = LoxType.of(TypeEnum.ANY, "any");
+      Expr iterable = expression();
+      consume(RIGHT_PAREN, "Expect ')' after for-each iterable.");
+      Stmt body = statement();
+      return new Stmt.ForEach(keyword, new Stmt.Var(name, null, modifiers, type), iterable, body);
+    }
+
     private Stmt whileStatement(){
       consume(LEFT_PAREN, "Expect '(' after 'while'.");
       Expr condition = expression();
@@ -750,7 +773,7 @@ public class Parser {
     private Expr assignment(){
       Expr expr = cast();
 
-      if(match(EQUAL, PLUS_ASSIGN, INCREMENT, MINUS_ASSIGN, DECREMENT, STAR_ASSIGN, POWER)){
+      if(match(EQUAL, PLUS_ASSIGN, INCREMENT, MINUS_ASSIGN, DECREMENT, STAR_ASSIGN, SLASH_ASSIGN, POWER)){
         AssignType type = AssignType.SET;
         switch (previous().type){
           case PLUS_ASSIGN:{
@@ -1,6 +1,10 @@
 package com.nix.lox;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
@@ -30,9 +34,100 @@ import com.nix.lox.Stmt.Try;
 import com.nix.lox.Stmt.When;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
+  private static class Local {
+    final String name;
+    final int slot;
+    // Index of the scope it's declared in.
+    final int scope;
+    final Modifiers modifiers;
+    final LoxType type;
+    boolean defined = false;
+
+    // What closures capturing it need to know: whether it can live in a
+    // Cell (variables and parameters can), and whether it might change
+    // after a closure copies it.
+    Stmt.Var var = null;
+    Closure paramOf = null;
+    boolean assigned = false;
+    boolean early = false;
+    boolean initializing = false;
+    boolean pinned = false;
+    boolean chained = false;
+    boolean boxed = false;
+
+    Local(String name, int slot, int scope, Modifiers modifiers, LoxType type){
+      this.name = name;
+      this.slot = slot;
+      this.scope = scope;
+      this.modifiers = modifiers;
+      this.type = type;
+    }
+
+    boolean boxable(){
+      return (var != null || paramOf != null) && !chained;
+    }
+  }
+
+  // A function being resolved. Plain functions and anonymous functions are
+  // flat unless something in them needs the scopes they're declared in:
+  // their closure is then an environment holding just the locals they
+  // use from enclosing functions, copied in at creation, or shared through
+  // a Cell when the local is assigned. Everything else closes over the
+  // scope chain as before.
+  private static class Closure {
+    final Stmt.Function function;
+    final Expr.AnonymousFunction anonymous;
+    // Index of its frame in scopes; it's created in the scope below.
+    final int frame;
+    // The closures it's declared in, outermost first.
+    final List<Closure> enclosing;
+    // The named function whose frame it's created in.
+    final Stmt.Function declaredIn;
+    boolean flat;
+    final Map<Local, Integer> captures = new LinkedHashMap<>();
+    final List<Integer> cells = new ArrayList<>();
+
+    Closure(Stmt.Function function, Expr.AnonymousFunction anonymous, int frame, List<Closure> enclosing, Stmt.Function declaredIn, boolean flat){
+      this.function = function;
+      this.anonymous = anonymous;
+      this.frame = frame;
+      this.enclosing = enclosing;
+      this.declaredIn = declaredIn;
+      this.flat = flat;
+    }
+  }
+
+  // A variable read or assignment reaching a local outside some closure.
+  private static class Use {
+    final Expr expr;
+    final Local local;
+    final int scope;
+    final List<Closure> crossed;
+
+    Use(Expr expr, Local local, int scope, List<Closure> crossed){
+      this.expr = expr;
+      this.local = local;
+      this.scope = scope;
+      this.crossed = crossed;
+    }
+  }
+
   private final Interpreter interpreter;
-  private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+  private final Stack<Map<String, Local>> scopes = new Stack<>();
   private FunctionType currentFunction = FunctionType.NONE;
+  // The named function or method being resolved, for tail calls.
+  private Stmt.Function currentDeclaration = null;
+  private boolean inTry = false;
+  private final List<Closure> closures = new ArrayList<>();
+  private final List<Closure> resolved = new ArrayList<>();
+  private final List<Use> uses = new ArrayList<>();
+  // Class and interface scopes, which closures can only reach through the
+  // scope chain.
+  private final BitSet pinned = new BitSet();
+  // Globals declared shared, and every global the script names, so using
+  // a shared one from global scope is warned about once, up front.
+  private final HashSet<String> sharedGlobals = new HashSet<>();
+  private final List<Token> globalNames = new ArrayList<>();
 
   private enum ClassType {
     NONE,
@@ -56,7 +151,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
   @Override
   public Void visitVarStmt(Stmt.Var stmt) {
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name.lexeme, stmt.modifiers, stmt.type);
+    if(stmt.slot != -1) scopes.peek().get(stmt.name.lexeme).var = stmt;
     if (stmt.initializer != null) {
       resolve(stmt.initializer);
     }
@@ -66,7 +162,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
   @Override
   public Void visitVariableExpr(Expr.Variable expr){
-    if(!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE){
+    if(!scopes.isEmpty() && scopes.peek().containsKey(expr.name.lexeme) && !scopes.peek().get(expr.name.lexeme).defined){
       Lox.error(expr.name, "Can't read local variable in it's own initializer");
     }
     resolveLocal(expr, expr.name);
@@ -76,7 +172,17 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
   @Override
   public Void visitAssignExpr(Expr.Assign expr) {
     resolve(expr.value);
-    resolveLocal(expr, expr.name);
+    int depth = depthOf(expr.name);
+    if(depth == -1) globalNames.add(expr.name);
+    if(depth != -1){
+      Local local = local(expr.name, depth);
+      expr.depth = depth;
+      expr.slot = local.slot;
+      expr.modifiers = local.modifiers;
+      expr.varType = local.type;
+      local.assigned = true;
+      use(expr, local);
+    }
     return null;
   }
 
@@ -87,35 +193,59 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
   }
 
   private void resolveFunction(Stmt.Function function, FunctionType type) {
+    resolveFunction(function, type, false);
+  }
+
+  private void resolveFunction(Stmt.Function function, FunctionType type, boolean flat) {
     FunctionType enclosingFunction = currentFunction;
+    Stmt.Function enclosingDeclaration = currentDeclaration;
+    boolean enclosingTry = inTry;
     currentFunction = type;
+    Closure closure = openClosure(function, null, flat);
+    currentDeclaration = function;
+    inTry = false;
 
     beginScope();
-    for (Parameter param : function.params) {
-      declare(param.name);
-      define(param.name);
+    // Methods get their receiver in slot 0 of their own frame.
+    if(type == FunctionType.METHOD || type == FunctionType.INITIALIZER){
+      put("this");
+      function.hasThis = true;
     }
+    declareParams(function.params, closure);
     if(function.hasBody) resolve(function.body);
+    function.frameNames = frameNames(scopes.peek());
     endScope();
+    closeClosure(closure);
     currentFunction = enclosingFunction;
+    currentDeclaration = enclosingDeclaration;
+    inTry = enclosingTry;
+  }
+
+  // The name in each slot of a function's frame, so every call can make
+  // its frame at full size and share these.
+  private static String[] frameNames(Map<String, Local> scope) {
+    String[] names = new String[scope.size()];
+    for(Local local : scope.values()){
+      names[local.slot] = local.name;
+    }
+    return names;
   }
 
   @Override
   public Void visitFunctionStmt(Stmt.Function stmt) {
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name.lexeme, stmt.modifiers, null);
     define(stmt.name);
+    if(stmt.extClass != null) byName(stmt.extClass);
+    else if(stmt.slot == -1) shared(stmt.name, stmt.modifiers);
 
-    resolveFunction(stmt, FunctionType.FUNCTION);
+    resolveFunction(stmt, FunctionType.FUNCTION, stmt.extClass == null);
     return null;
   }
 
   @Override
   public Void visitTestStmt(Stmt.Test stmt) {
     resolve(stmt.name);
-
-    beginScope();
     resolve(stmt.body);
-    endScope();
 
     return null;
   }
@@ -154,11 +284,223 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
       }
 
       resolve(stmt.value);
+      stmt.tailCall = tailCall(stmt.value);
     }
 
     return null;
   }
 
+  // A call whose value is returned as is, in parentheses or not, can run
+  // after the calling function's frame is gone, unless a try around it has
+  // to see it fail.
+  private Expr.Call tailCall(Expr value) {
+    while(value instanceof Expr.Grouping) value = ((Expr.Grouping)value).expression;
+    if(!(value instanceof Expr.Call) || currentDeclaration == null || inTry) return null;
+    if(currentFunction != FunctionType.FUNCTION && currentFunction != FunctionType.METHOD) return null;
+    Expr.Call call = (Expr.Call)value;
+    if(call.nullCheck || !call.templates.isEmpty()) return null;
+    if(!(call.callee instanceof Expr.Variable) || !((Expr.Variable)call.callee).name.lexeme.equals(currentDeclaration.name.lexeme)){
+      currentDeclaration.tailCallsOthers = true;
+    }
+    return call;
+  }
+
+  private Closure openClosure(Stmt.Function function, Expr.AnonymousFunction anonymous, boolean flat) {
+    Closure closure = new Closure(function, anonymous, scopes.size(), new ArrayList<>(closures), currentDeclaration, flat);
+    closures.add(closure);
+    return closure;
+  }
+
+  private void closeClosure(Closure closure) {
+    closures.remove(closures.size() - 1);
+    resolved.add(closure);
+  }
+
+  private void declareParams(List<Parameter> params, Closure closure) {
+    for (Parameter param : params) {
+      declare(param.name);
+      define(param.name);
+      scopes.peek().get(param.name.lexeme).paramOf = closure;
+    }
+  }
+
+  // The closures between the current scope and a local's.
+  private static List<Closure> crossed(List<Closure> open, Local local) {
+    List<Closure> crossed = new ArrayList<>();
+    for(Closure closure : open){
+      if(closure.frame > local.scope) crossed.add(closure);
+    }
+    return crossed;
+  }
+
+  private void use(Expr expr, Local local) {
+    boolean plain = expr instanceof Expr.Variable || expr instanceof Expr.Assign || expr instanceof Expr.This;
+    if(!plain) local.chained = true;
+    List<Closure> crossed = crossed(closures, local);
+    if(!crossed.isEmpty()){
+      if(local.pinned || !plain){
+        chained(crossed);
+        return;
+      }
+      if(!local.defined || local.initializing) local.early = true;
+    }
+    // Uses that stay inside the local's own function are kept too, in
+    // case it ends up boxed.
+    uses.add(new Use(expr, local, scopes.size() - 1, crossed));
+  }
+
+  // A name the interpreter looks up through the scope chain at runtime.
+  private void byName(Token name) {
+    int depth = depthOf(name);
+    if(depth != -1) chained(crossed(closures, local(name, depth)));
+  }
+
+  private void shared(Token name, Modifiers modifiers) {
+    if(modifiers.contains(TokenType.STATIC)) sharedGlobals.add(name.lexeme);
+  }
+
+  private void warnShared() {
+    HashSet<String> warned = new HashSet<>();
+    for(Token name : globalNames){
+      Field field = interpreter.globals.values.get(name.lexeme);
+      boolean shared = sharedGlobals.contains(name.lexeme) || field != null && field.modifiers != null && field.modifiers.contains(TokenType.STATIC);
+      if(shared && warned.add(name.lexeme)){
+        System.out.println("[WARNING] Accessing static context '" + name.lexeme + "' in global scope in not recommended");
+      }
+    }
+    globalNames.clear();
+  }
+
+  private void chained(List<Closure> crossed) {
+    for(Closure closure : crossed){
+      closure.flat = false;
+    }
+  }
+
+  // The innermost flat closure a use goes through, which captures it.
+  private static Closure capturing(List<Closure> crossed) {
+    for(int i = crossed.size() - 1; i >= 0; i--){
+      if(crossed.get(i).flat) return crossed.get(i);
+    }
+    return null;
+  }
+
+  private static void capture(List<Closure> crossed, Local local) {
+    Closure closure = capturing(crossed);
+    if(closure != null && !closure.captures.containsKey(local)) closure.captures.put(local, closure.captures.size());
+  }
+
+  // Once everything is resolved: works out what each flat closure
+  // captures, boxes the locals that need sharing, and points the uses
+  // inside flat closures at their own environment.
+  private void flatten() {
+    boolean changed = true;
+    while(changed){
+      for(Closure closure : resolved){
+        closure.captures.clear();
+      }
+      for(Use use : uses){
+        capture(use.crossed, use.local);
+      }
+      // Inner closures come first, and copy what they capture from the
+      // closures around them.
+      for(Closure closure : resolved){
+        for(Local local : closure.captures.keySet()){
+          capture(crossed(closure.enclosing, local), local);
+        }
+      }
+      // A local that can't be boxed has to stay where it is.
+      changed = false;
+      for(Closure closure : resolved){
+        for(Local local : closure.captures.keySet()){
+          if(!local.boxable() && (local.assigned || local.early)){
+            closure.flat = false;
+            changed = true;
+            break;
+          }
+        }
+      }
+    }
+
+    for(Closure closure : resolved){
+      for(Local local : closure.captures.keySet()){
+        if(local.boxed || !(local.assigned || local.early)) continue;
+        local.boxed = true;
+        if(local.var != null) local.var.boxed = true;
+        else local.paramOf.cells.add(local.slot);
+      }
+    }
+
+    for(Use use : uses){
+      Closure closure = capturing(use.crossed);
+      if(closure != null){
+        int depth = use.scope - closure.frame + 1;
+        int slot = closure.captures.get(use.local);
+        if(use.expr instanceof Expr.Variable){
+          ((Expr.Variable)use.expr).depth = depth;
+          ((Expr.Variable)use.expr).slot = slot;
+        }
+        else if(use.expr instanceof Expr.Assign){
+          ((Expr.Assign)use.expr).depth = depth;
+          ((Expr.Assign)use.expr).slot = slot;
+        }
+        else{
+          ((Expr.This)use.expr).depth = depth;
+          ((Expr.This)use.expr).slot = slot;
+        }
+      }
+      if(use.local.boxed){
+        if(use.expr instanceof Expr.Variable) ((Expr.Variable)use.expr).boxed = true;
+        else if(use.expr instanceof Expr.Assign) ((Expr.Assign)use.expr).boxed = true;
+      }
+    }
+
+    for(Closure closure : resolved){
+      int[] cells = null;
+      if(!closure.cells.isEmpty()){
+        cells = new int[closure.cells.size()];
+        for(int i = 0; i < cells.length; i++){
+          cells[i] = closure.cells.get(i);
+        }
+      }
+      List<Expr.Variable> captures = closure.flat ? sources(closure) : null;
+      // Closures over the scope chain can outlive the call they're made
+      // in, so that call's frame can't be reused for the next one.
+      if(!closure.flat && closure.declaredIn != null) closure.declaredIn.frameCaptured = true;
+      if(closure.function != null){
+        closure.function.captures = captures;
+        closure.function.cells = cells;
+      }
+      else{
+        closure.anonymous.captures = captures;
+        closure.anonymous.cells = cells;
+      }
+    }
+
+    resolved.clear();
+    uses.clear();
+  }
+
+  // Where a flat closure copies each of its captures from, seen from the
+  // scope it's created in.
+  private static List<Expr.Variable> sources(Closure closure) {
+    List<Expr.Variable> sources = new ArrayList<>();
+    for(Local local : closure.captures.keySet()){
+      Expr.Variable source = new Expr.Variable(new Token(TokenType.IDENTIFIER, local.name, null, 0));
+      Closure from = capturing(crossed(closure.enclosing, local));
+      if(from != null){
+        source.depth = closure.frame - from.frame;
+        source.slot = from.captures.get(local);
+      }
+      else{
+        source.depth = closure.frame - 1 - local.scope;
+        source.slot = local.slot;
+      }
+      sources.add(source);
+    }
+    return sources;
+  }
+
   @Override
   public Void visitExpectStmt(Stmt.Expect stmt) {
     if (stmt.value != null) {
@@ -185,6 +527,16 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     return null;
   }
 
+  @Override
+  public Void visitForEachStmt(Stmt.ForEach stmt) {
+    resolve(stmt.iterable);
+    beginScope();
+    resolve(stmt.variable);
+    resolve(stmt.body);
+    endScope();
+    return null;
+  }
+
   
 
   @Override
@@ -231,53 +583,102 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
   
 
-  private void resolveLocal(Expr expr, Token name) {
+  private int depthOf(Token name) {
+    return depthOf(name.lexeme);
+  }
+
+  private int depthOf(String name) {
     for (int i = scopes.size() - 1; i >= 0; i--) {
-      if(scopes.get(i).containsKey(name.lexeme)){
-        interpreter.resolve(name, scopes.size() - 1 - i);
-        return;
+      if(scopes.get(i).containsKey(name)){
+        return scopes.size() - 1 - i;
       }
     }
+    return -1;
   }
 
-  private void declare(Token name) {
-    if(scopes.isEmpty()) return;
+  private Local local(Token name, int depth) {
+    return scopes.get(scopes.size() - 1 - depth).get(name.lexeme);
+  }
+
+  private void resolveLocal(Expr expr, Token name) {
+    int depth = depthOf(name);
+    if(depth == -1){
+      if(expr instanceof Expr.Variable) globalNames.add(name);
+      return;
+    }
+    Local local = local(name, depth);
+    int slot = local.slot;
+    if(!(expr instanceof Expr.New)) use(expr, local);
+
+    if(expr instanceof Expr.Variable){
+      ((Expr.Variable)expr).depth = depth;
+      ((Expr.Variable)expr).slot = slot;
+    }
+    else if(expr instanceof Expr.This){
+      ((Expr.This)expr).depth = depth;
+      ((Expr.This)expr).slot = slot;
+    }
+    else if(expr instanceof Expr.Super){
+      ((Expr.Super)expr).depth = depth;
+      ((Expr.Super)expr).slot = slot;
+    }
+    else if(expr instanceof Expr.Value){
+      ((Expr.Value)expr).depth = depth;
+      ((Expr.Value)expr).slot = slot;
+    }
+  }
 
-    Map<String, Boolean> scope = scopes.peek();
+  private int declare(Token name) {
+    if(scopes.isEmpty()) return -1;
+
+    Map<String, Local> scope = scopes.peek();
 
     if(scope.containsKey(name.lexeme)) {
       Lox.error(name, "Duplicate variable in scope");
+      return scope.get(name.lexeme).slot;
     }
 
-    scope.put(name.lexeme, false);
+    return declare(name.lexeme, Modifiers.empty(), null);
   }
 
-  private void declare(String name) {
-    if(scopes.isEmpty()) return;
+  private int declare(String name, Modifiers modifiers, LoxType type) {
+    if(scopes.isEmpty()) return -1;
 
-    Map<String, Boolean> scope = scopes.peek();
+    Map<String, Local> scope = scopes.peek();
 
     if(scope.containsKey(name)) {
       Lox.error(new Token(TokenType.VOID, name, scope, 0), "Duplicate variable in scope");
+      return scope.get(name).slot;
     }
 
-    scope.put(name, false);
+    Local local = new Local(name, scope.size(), scopes.size() - 1, modifiers, type);
+    local.pinned = pinned.get(local.scope);
+    scope.put(name, local);
+    return local.slot;
   }
 
   private void define(Token name) {
-    if(scopes.isEmpty()) return;
-    scopes.peek().put(name.lexeme, true);
+    define(name.lexeme);
   }
 
   private void define(String name) {
     if(scopes.isEmpty()) return;
-    scopes.peek().put(name, true);
+    scopes.peek().get(name).defined = true;
+  }
+
+  private void put(String name) {
+    declare(name, Modifiers.empty(), null);
+    define(name);
   }
 
   void resolve(List<Stmt> statements) {
     for(Stmt statement : statements) {
       resolve(statement);
     }
+    if(scopes.isEmpty()){
+      flatten();
+      warnShared();
+    }
   }
 
   private void resolve(Stmt stmt){
@@ -289,21 +690,35 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
   }
 
   private void beginScope(){
-    scopes.push(new HashMap<String, Boolean>());
+    scopes.push(new HashMap<String, Local>());
   }
 
   private void endScope(){
+    pinned.clear(scopes.size() - 1);
     scopes.pop();
   }
 
+  private void beginPinnedScope(){
+    beginScope();
+    pinned.set(scopes.size() - 1);
+  }
+
 
   @Override
   public Void visitClassStmt(Class stmt) {
     ClassType enclosingClass = currentClass;
     currentClass = ClassType.CLASS;
 
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name);
     define(stmt.name);
+    // Closures made while the class is declared can't copy it yet.
+    Local self = stmt.slot == -1 ? null : scopes.peek().get(stmt.name.lexeme);
+    if(self != null) self.initializing = true;
+    if(stmt.interfase != null){
+      for(Token interfase : stmt.interfase){
+        byName(interfase);
+      }
+    }
 
     if(stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)){
       Lox.error(stmt.superclass.name, "A class cant inherit from itself");
@@ -314,17 +729,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
       resolve(stmt.superclass);
     }
 
-    if(stmt.superclass != null){
-      beginScope();
-      scopes.peek().put("super", true);
-    }
-    
-
-    beginScope();
-    scopes.peek().put("this", true);
+    // Matches the single class environment the interpreter builds:
+    // this, super, then the template names.
+    beginPinnedScope();
+    put("this");
+    put("super");
     
     for(Token template : stmt.templates){
-      scopes.peek().put(template.lexeme, true);
+      put(template.lexeme);
     }
 
     for(Stmt.Function method : stmt.methods) {
@@ -340,12 +752,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     }
 
     for(Stmt.Property property : stmt.props){
-      resolve(property);
+      resolveProperty(property);
     }
 
     endScope();
-
-    if(stmt.superclass != null) endScope();
+    if(self != null) self.initializing = false;
 
     currentClass = enclosingClass;
     return null;
@@ -354,10 +765,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
   @Override
   public Void visitInterfaceStmt(Interface stmt) {
     
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name);
     define(stmt.name);
 
-    beginScope();
+    beginPinnedScope();
     for(Stmt.Function func : stmt.methods){
       resolveFunction(func, FunctionType.METHOD);
     }
@@ -368,7 +779,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
   @Override
   public Void visitEnumStmt(Stmt.Enum stmt) {
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name);
     define(stmt.name);
 
     return null;
@@ -380,6 +791,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     for(Stmt.Case c : stmt.cases){
       resolve(c);
     }
+    if(stmt.defaultCase != null) resolve(stmt.defaultCase);
     return null;
   }
 
@@ -436,6 +848,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     }
     
     resolveLocal(expr, expr.keyword);
+    expr.thisDepth = depthOf("this");
     return null;
   }
 
@@ -464,17 +877,19 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
   @Override
   public Void visitAnonymousFunctionExpr(AnonymousFunction expr) {
       FunctionType enclosingFunction = currentFunction;
+      Stmt.Function enclosingDeclaration = currentDeclaration;
       currentFunction = FunctionType.ANONYMOUS;
+      Closure closure = openClosure(null, expr, true);
+      currentDeclaration = null;
 
       beginScope();
-      for (Parameter param : expr.params) {
-        declare(param.name);
-        define(param.name);
-      }
+      declareParams(expr.params, closure);
       resolve(expr.body);
       endScope();
-        
+      closeClosure(closure);
+
       currentFunction = enclosingFunction;
+      currentDeclaration = enclosingDeclaration;
     return null;
   }
 
@@ -487,21 +902,19 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
   @Override
   public Void visitPropertyStmt(Property stmt) {
-    beginScope();
-      beginScope();
-        scopes.peek().put("value", true);
-        resolve(stmt.get);
-      endScope();
-      if(stmt.set != null) {
-        beginScope();
-          scopes.peek().put("value", true);
-          resolve(stmt.set);
-        endScope();
-      }
-    endScope();
+    stmt.slot = declare(stmt.name.lexeme, stmt.modifiers, null);
+    define(stmt.name);
+    if(stmt.slot == -1) shared(stmt.name, stmt.modifiers);
+    resolveProperty(stmt);
     return null;
   }
 
+  // The accessors close over the declaring scope and get 'value' as their parameter.
+  private void resolveProperty(Property stmt) {
+    resolveFunction(stmt.get, FunctionType.FUNCTION);
+    if(stmt.set != null) resolveFunction(stmt.set, FunctionType.FUNCTION);
+  }
+
   @Override
   public Void visitSetAssignExpr(SetAssign expr) {
     // TODO Auto-generated method stub
@@ -548,9 +961,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
   @Override
   public Void visitTryStmt(Try stmt) {
+    boolean enclosingTry = inTry;
+    inTry = true;
     resolve(stmt.tryBranch);
+    inTry = enclosingTry;
     beginScope();
-      declare(stmt.exName.lexeme);
+      declare(stmt.exName.lexeme, new Modifiers(TokenType.CONST), null);
       define(stmt.exName.lexeme);
       resolve(stmt.catchBranch);
     endScope();
@@ -0,0 +1,99 @@
+package com.nix.lox;
+
+/**
+ * A string built by concatenation. Every Rope is a prefix of a shared
+ * StringBuilder, so appending to the newest Rope over a builder adds to
+ * the builder in place instead of copying what's already there; appending
+ * to an older one copies its prefix first. That keeps building a string in
+ * a loop (s = s + x, s += x) linear.
+ *
+ * Ropes are Lox strings: typeOf gives them the string type, indexing and
+ * sizeof read the builder directly, and anything else that needs a Java
+ * String (printing, equality, natives) flattens it once with toString.
+ */
+final class Rope implements CharSequence {
+  // Shorter results stay plain Strings, which are cheaper to make.
+  static final int MIN_LENGTH = 64;
+
+  private final StringBuilder builder;
+  private final int length;
+  private String flat;
+
+  private Rope(StringBuilder builder){
+    this.builder = builder;
+    this.length = builder.length();
+  }
+
+  static boolean isString(Object value){
+    return value instanceof String || value instanceof Rope;
+  }
+
+  // left + right for a left operand that isn't a number.
+  static Object concat(Object left, Object right){
+    if(left instanceof Rope) return ((Rope)left).append(right);
+    String start = left.toString();
+    if(right instanceof Rope || start.length() >= MIN_LENGTH) return of(start).append(right);
+    String end = right.toString();
+    if(start.length() + end.length() < MIN_LENGTH) return start.concat(end);
+    return of(start).append(end);
+  }
+
+  static Rope of(Object value){
+    if(value instanceof Rope) return (Rope)value;
+    String start = value.toString();
+    return new Rope(new StringBuilder(Math.max(MIN_LENGTH * 2, start.length() * 2)).append(start));
+  }
+
+  Rope append(Object value){
+    StringBuilder target = builder;
+    if(target.length() != length){
+      target = new StringBuilder(Math.max(MIN_LENGTH * 2, length * 2)).append(builder, 0, length);
+    }
+    if(value instanceof Rope) ((Rope)value).appendTo(target);
+    else target.append(value.toString());
+    return new Rope(target);
+  }
+
+  private void appendTo(StringBuilder target){
+    target.append(builder, 0, length);
+  }
+
+  // The Java String for a Lox string value.
+  static Object flatten(Object value){
+    return value instanceof Rope ? value.toString() : value;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if(index < 0 || index >= length) throw new StringIndexOutOfBoundsException(index);
+    return builder.charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if(this == other) return true;
+    if(!isString(other)) return false;
+    return toString().equals(other.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    if(flat == null) flat = builder.substring(0, length);
+    return flat;
+  }
+}
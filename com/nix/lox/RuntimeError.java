@@ -4,7 +4,7 @@ public class RuntimeError extends RuntimeException{
     final Token token;
 
     RuntimeError(Token token, String message){
-      super(message);
+      super(message, null, false, false);
       this.token = token;
     }
 }
@@ -180,6 +180,8 @@ public class Scanner {
       case '/':
         if(match('/')){
           while (peek() != '\n' && !isAtEnd()) advance();
+        } else if(match('=')){
+          addToken(TokenType.SLASH_ASSIGN);
         } else{
           addToken(TokenType.SLASH);
         }
@@ -0,0 +1,57 @@
+package com.nix.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Field layout shared by LoxInstances. A shape maps each field name to an
+ * index into the instance's Object[] of values and remembers the modifiers
+ * and declared type for that index. Shapes are immutable: adding a field
+ * moves the instance to a child shape, and children are cached so instances
+ * that grow the same way keep sharing them.
+ */
+class Shape {
+  private final Map<String, Integer> slots;
+  private final Map<String, Shape> transitions = new HashMap<>();
+  final String[] names;
+  final Modifiers[] modifiers;
+  final LoxType[] types;
+
+  Shape(){
+    slots = new HashMap<>();
+    names = new String[0];
+    modifiers = new Modifiers[0];
+    types = new LoxType[0];
+  }
+
+  private Shape(Shape parent, String name, Modifiers modifiers, LoxType type){
+    int size = parent.names.length;
+    this.slots = new HashMap<>(parent.slots);
+    this.slots.put(name, size);
+    this.names = Arrays.copyOf(parent.names, size + 1);
+    this.modifiers = Arrays.copyOf(parent.modifiers, size + 1);
+    this.types = Arrays.copyOf(parent.types, size + 1);
+    this.names[size] = name;
+    this.modifiers[size] = modifiers;
+    this.types[size] = type;
+  }
+
+  int size(){
+    return names.length;
+  }
+
+  int indexOf(String name){
+    Integer slot = slots.get(name);
+    return slot == null ? -1 : slot;
+  }
+
+  Shape add(String name, Modifiers modifiers, LoxType type){
+    Shape next = transitions.get(name);
+    if(next == null){
+      next = new Shape(this, name, modifiers, type);
+      transitions.put(name, next);
+    }
+    return next;
+  }
+}
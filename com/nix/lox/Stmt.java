@@ -14,6 +14,7 @@ abstract class Stmt {
     R visitExpectStmt(Expect stmt);
     R visitVarStmt(Var stmt);
     R visitWhileStmt(While stmt);
+    R visitForEachStmt(ForEach stmt);
     R visitTestStmt(Test stmt);
     R visitGetFileStmt(GetFile stmt);
     R visitModuleStmt(Module stmt);
@@ -61,6 +62,7 @@ abstract class Stmt {
     final List<Stmt.Property> props;
     final List<Token> templates;
     final List<Token> interfase;
+    int slot = -1;
   }
   static class Expression extends Stmt {
     Expression(Expr expression) {
@@ -97,6 +99,14 @@ abstract class Stmt {
     final Modifiers modifiers;
     final Boolean hasBody;
     final LoxType returnType;
+    int slot = -1;
+    boolean hasThis = false;
+    boolean returnChecked = false;
+    boolean frameCaptured = false;
+    boolean tailCallsOthers = false;
+    String[] frameNames = null;
+    List<Expr.Variable> captures = null;
+    int[] cells = null;
   }
   static class If extends Stmt {
     If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
@@ -143,6 +153,7 @@ abstract class Stmt {
 
     final Token keyword;
     final Expr value;
+    Expr.Call tailCall = null;
   }
   static class Expect extends Stmt {
     Expect(Token keyword, Expr value) {
@@ -175,6 +186,9 @@ abstract class Stmt {
     final Expr initializer;
     final Modifiers modifiers;
     final LoxType type;
+    int slot = -1;
+    boolean checked = false;
+    boolean boxed = false;
   }
   static class While extends Stmt {
     While(Expr condition, Stmt body) {
@@ -190,6 +204,24 @@ abstract class Stmt {
     final Expr condition;
     final Stmt body;
   }
+  static class ForEach extends Stmt {
+    ForEach(Token keyword, Stmt.Var variable, Expr iterable, Stmt body) {
+      this.keyword = keyword;
+      this.variable = variable;
+      this.iterable = iterable;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForEachStmt(this);
+    }
+
+    final Token keyword;
+    final Stmt.Var variable;
+    final Expr iterable;
+    final Stmt body;
+  }
   static class Test extends Stmt {
     Test(Expr name, Stmt body) {
       this.name = name;
@@ -245,6 +277,7 @@ abstract class Stmt {
     final Token name;
     final List<Stmt.Function> methods;
     final List<Stmt.Var> variables;
+    int slot = -1;
   }
   static class Enum extends Stmt {
     Enum(Token name, List<LoxEnum.Element> elements) {
@@ -259,6 +292,7 @@ abstract class Stmt {
 
     final Token name;
     final List<LoxEnum.Element> elements;
+    int slot = -1;
   }
   static class Switch extends Stmt {
     Switch(Expr value, List<Stmt.Case> cases, Stmt.Case defaultCase) {
@@ -275,6 +309,7 @@ abstract class Stmt {
     final Expr value;
     final List<Stmt.Case> cases;
     final Stmt.Case defaultCase;
+    SwitchTable table = null;
   }
   static class Case extends Stmt {
     Case(Expr value, Stmt body) {
@@ -333,6 +368,7 @@ abstract class Stmt {
     final LoxType type;
     final Stmt.Function get;
     final Stmt.Function set;
+    int slot = -1;
   }
   static class Try extends Stmt {
     Try(Stmt tryBranch, List<Stmt> catchBranch, Token exName) {
@@ -0,0 +1,96 @@
+package com.nix.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cases of a switch whose case values are all constants, found by
+ * value instead of comparing against each case in turn. Whole numbers in a
+ * small range (number literals, or enum elements) index a dense array,
+ * anything else goes through a HashMap. A value matches a case exactly
+ * when Interpreter.isEqual says so, so the number 1 still doesn't match an
+ * enum element worth 1, and when two cases are equal the first one wins.
+ */
+class SwitchTable {
+  static final int MAX_DENSE = 1024;
+  // Marks a switch with a case that isn't constant.
+  static final SwitchTable SEQUENTIAL = new SwitchTable();
+
+  private Map<Object, Integer> cases = null;
+  private int[] dense = null;
+  private int low = 0;
+  private boolean integers = false;
+
+  // The enums the case values came from. The tree-walker checks they're
+  // still what their names hold before using the table.
+  Expr[] enumNames = new Expr[0];
+  Object[] enums = new Object[0];
+
+  static SwitchTable of(List<Object> values){
+    SwitchTable table = new SwitchTable();
+    if(!table.makeDense(values)){
+      table.cases = new HashMap<>();
+      for(int i = 0; i < values.size(); i++){
+        table.cases.putIfAbsent(Rope.flatten(values.get(i)), i);
+      }
+    }
+    return table;
+  }
+
+  private boolean makeDense(List<Object> values){
+    if(values.isEmpty()) return false;
+    integers = values.get(0) instanceof Integer;
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for(Object value : values){
+      if(integers ? !(value instanceof Integer) : wholeNumber(value) == null) return false;
+      int number = integers ? (Integer)value : wholeNumber(value);
+      min = Math.min(min, number);
+      max = Math.max(max, number);
+    }
+    long span = (long)max - min + 1;
+    if(span > MAX_DENSE || span > values.size() * 4L) return false;
+
+    low = min;
+    dense = new int[(int)span];
+    Arrays.fill(dense, -1);
+    for(int i = values.size() - 1; i >= 0; i--){
+      Object value = values.get(i);
+      dense[(integers ? (Integer)value : wholeNumber(value)) - low] = i;
+    }
+    return true;
+  }
+
+  // The int a num is equal to, or null. -0.0 doesn't count, since it
+  // isn't equal to 0.0.
+  private static Integer wholeNumber(Object value){
+    if(!(value instanceof Double)) return null;
+    double number = (Double)value;
+    int whole = (int)number;
+    if(whole != number || (whole == 0 && Double.doubleToRawLongBits(number) != 0)) return null;
+    return whole;
+  }
+
+  // The index of the case value matches, or -1 for none.
+  int find(Object value){
+    if(dense != null){
+      long number;
+      if(integers){
+        if(!(value instanceof Integer)) return -1;
+        number = (Integer)value;
+      }
+      else{
+        if(!(value instanceof Double)) return -1;
+        double d = (Double)value;
+        number = (long)d;
+        if(number != d || (number == 0 && Double.doubleToRawLongBits(d) != 0)) return -1;
+      }
+      long index = number - low;
+      return index < 0 || index >= dense.length ? -1 : dense[(int)index];
+    }
+    Integer index = cases.get(Rope.flatten(value));
+    return index == null ? -1 : index;
+  }
+}
@@ -0,0 +1,191 @@
+package com.nix.lox;
+
+/**
+ * Decides which tier every function runs in. A function starts in the
+ * plain tree-walker, where each call counts itself, the loop iterations of
+ * its body, and the kinds of values passed in and returned. Past the first
+ * thresholds it runs with self-specializing binary nodes (the same nodes
+ * --specialize uses everywhere); past the second the {@link Jit} compiles
+ * it, using the argument and return profile to pick the JVM types of
+ * anything declared 'any'.
+ *
+ * A function that loops long enough moves up from inside the loop, so one
+ * called only once still gets there: the rest of that call runs
+ * specialized, and compiled code is used from the next call on. The
+ * running call is never moved into compiled code.
+ *
+ * Compiled code only takes the argument types it was compiled for. An
+ * argument of another type, or anything that invalidates the inline caches,
+ * drops the function back to the interpreter with a fresh profile. A
+ * function that keeps getting deoptimized stops being compiled.
+ */
+class Tiers {
+  static final int SPECIALIZE_CALLS = 100;
+  static final int SPECIALIZE_LOOPS = 1000;
+  static final int COMPILE_CALLS = 1000;
+  static final int COMPILE_LOOPS = 10000;
+  static final int MAX_DEOPTS = 3;
+
+  enum Tier {
+    INTERPRETED,
+    SPECIALIZED,
+    COMPILED
+  }
+
+  static class Profile {
+    Tier tier = Tier.INTERPRETED;
+    int invocations = 0;
+    int backEdges = 0;
+    int deopts = 0;
+    boolean uncompilable = false;
+    // double.class or boolean.class while every value seen had that kind,
+    // Object.class once anything else showed up, null before the first.
+    final Class<?>[] args;
+    Class<?> returned = null;
+
+    Profile(int arity){
+      args = new Class<?>[arity];
+    }
+
+    void reset(){
+      invocations = 0;
+      backEdges = 0;
+      returned = null;
+      for(int i = 0; i < args.length; i++){
+        args[i] = null;
+      }
+    }
+  }
+
+  private final Interpreter interpreter;
+  private final Jit jit;
+  private final boolean log;
+  private final boolean specializeAll;
+  // The function whose body is running, for promotion from its loops.
+  private LoxFunction running = null;
+
+  Tiers(Interpreter interpreter, boolean log){
+    this.interpreter = interpreter;
+    this.jit = new Jit(interpreter, this);
+    this.log = log;
+    this.specializeAll = interpreter.specialize;
+  }
+
+  static Profile profile(LoxFunction function){
+    if(function.profile == null) function.profile = new Profile(function.declaration.params.size());
+    return function.profile;
+  }
+
+  static Class<?> kindOf(Object value){
+    if(value instanceof Double) return double.class;
+    if(value instanceof Boolean) return boolean.class;
+    return Object.class;
+  }
+
+  private static Class<?> merge(Class<?> seen, Class<?> kind){
+    return seen == null || seen == kind ? kind : Object.class;
+  }
+
+  // Runs an interpreted call of function, whose frame is already set up.
+  Object run(LoxFunction function, Environment environment, LoxInstance receiver){
+    Profile profile = profile(function);
+    profile.invocations++;
+    int base = function.declaration.hasThis ? 1 : 0;
+    for(int i = 0; i < profile.args.length; i++){
+      profile.args[i] = merge(profile.args[i], kindOf(environment.getSlot(base + i)));
+    }
+    if(profile.tier != Tier.COMPILED) promote(function, profile, false);
+
+    boolean specialize = interpreter.specialize;
+    int outer = interpreter.backEdges;
+    int outerLimit = interpreter.backEdgeLimit;
+    LoxFunction caller = running;
+    interpreter.specialize = specializeAll || profile.tier != Tier.INTERPRETED;
+    interpreter.backEdges = 0;
+    interpreter.backEdgeLimit = loopLimit(profile);
+    running = function;
+    try{
+      interpreter.executeBlock(function.declaration.body, environment);
+    }
+    finally{
+      // Only this body's iterations, not those of the functions it called.
+      profile.backEdges += interpreter.backEdges;
+      interpreter.backEdges = outer;
+      interpreter.backEdgeLimit = outerLimit;
+      interpreter.specialize = specialize;
+      running = caller;
+    }
+    Object value = function.finish(interpreter, receiver);
+    if(!(value instanceof LoxFunction.TailCall)) profile.returned = merge(profile.returned, kindOf(value));
+    return value;
+  }
+
+  // Iterations of the running body that take it to the next tier, or -1
+  // when that's left to its next call.
+  private static int loopLimit(Profile profile){
+    int left;
+    switch(profile.tier){
+      case INTERPRETED: left = SPECIALIZE_LOOPS - profile.backEdges; break;
+      case SPECIALIZED: left = profile.uncompilable ? 0 : COMPILE_LOOPS - profile.backEdges; break;
+      default: left = 0; break;
+    }
+    return left > 0 ? left : -1;
+  }
+
+  // Called by a loop in the running body when it reaches the limit.
+  void loop(){
+    Profile profile = profile(running);
+    profile.backEdges += interpreter.backEdges;
+    interpreter.backEdges = 0;
+    if(profile.tier != Tier.COMPILED) promote(running, profile, true);
+    if(profile.tier != Tier.INTERPRETED) interpreter.specialize = true;
+    interpreter.backEdgeLimit = loopLimit(profile);
+  }
+
+  // From a loop the profile may not have seen a return yet, so code that
+  // can't be compiled is tried again on the next call.
+  private void promote(LoxFunction function, Profile profile, boolean fromLoop){
+    if(profile.tier == Tier.INTERPRETED){
+      if(profile.invocations < SPECIALIZE_CALLS && profile.backEdges < SPECIALIZE_LOOPS) return;
+      log(function, "interpreted -> specialized after " + profile.invocations + " calls, " + profile.backEdges + " loop iterations");
+      profile.tier = Tier.SPECIALIZED;
+    }
+    if(profile.uncompilable) return;
+    if(profile.invocations < COMPILE_CALLS && profile.backEdges < COMPILE_LOOPS) return;
+    if(profile.deopts >= MAX_DEOPTS){
+      log(function, "stays specialized, deoptimized " + profile.deopts + " times");
+      profile.uncompilable = true;
+    }
+    else if(!jit.compile(function) && !fromLoop){
+      log(function, "stays specialized, can't be compiled");
+      profile.uncompilable = true;
+    }
+  }
+
+  // Called by the Jit for every function it produced code for.
+  void compiled(LoxFunction function, LoxFunction root){
+    Profile profile = profile(function);
+    String from = profile.tier.name().toLowerCase();
+    profile.tier = Tier.COMPILED;
+    if(function == root){
+      log(function, from + " -> compiled after " + profile.invocations + " calls, " + profile.backEdges + " loop iterations");
+    }
+    else{
+      log(function, from + " -> compiled along with " + root.declaration.name.lexeme);
+    }
+  }
+
+  void deoptimize(LoxFunction function, String reason){
+    Profile profile = profile(function);
+    function.compiled = null;
+    profile.tier = Tier.INTERPRETED;
+    profile.deopts++;
+    profile.reset();
+    log(function, "compiled -> interpreted, " + reason);
+  }
+
+  private void log(LoxFunction function, String message){
+    if(!log) return;
+    System.err.println("[tier] " + function.declaration.name.lexeme + " (line " + function.declaration.name.line + "): " + message);
+  }
+}
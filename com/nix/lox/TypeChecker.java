@@ -0,0 +1,753 @@
+package com.nix.lox;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import com.nix.lox.LoxType.TypeEnum;
+
+/**
+ * Runs between the Resolver and the Interpreter. It works out the static
+ * type of an expression wherever the declared types make it certain,
+ * reports declarations, assignments, arguments and returns that can never
+ * match, and marks the sites it proved so the runtime skips their checks.
+ * Anything typed 'any', generic, or otherwise out of its sight stays
+ * unknown and keeps its runtime check.
+ *
+ * A variable declared with a concrete type and given a non-nil value can
+ * only ever hold that type afterwards: the runtime refuses an assignment
+ * whose type differs from the current value. That is what lets a read of
+ * such a variable be trusted.
+ */
+class TypeChecker implements Expr.Visitor<LoxType>, Stmt.Visitor<Void> {
+  private static final LoxType NUMBER = LoxType.NUMBER;
+  private static final LoxType STRING = LoxType.STRING;
+  private static final LoxType BOOLEAN = LoxType.BOOLEAN;
+  private static final LoxType TYPE = LoxType.TYPE;
+
+  private static class Symbol {
+    static final Symbol UNKNOWN = new Symbol(null, null);
+
+    final Object declaration;
+    final LoxType type;
+
+    Symbol(Object declaration, LoxType type){
+      this.declaration = declaration;
+      this.type = type;
+    }
+  }
+
+  // In the REPL a later line can redeclare any global, so only constants
+  // are trusted there.
+  private final boolean trustGlobals;
+  private final Stack<Map<String, Symbol>> scopes = new Stack<>();
+  private Map<String, Symbol> globals;
+
+  // Gathered by a first walk over the program before anything is marked.
+  private boolean collecting;
+  private final Map<String, Integer> declarations = new HashMap<>();
+  private final Map<String, Stmt.Class> classes = new HashMap<>();
+  private final java.util.Set<String> fieldNames = new HashSet<>();
+  private final java.util.Set<Object> widened = new HashSet<>();
+
+  private Stmt.Function function = null;
+  private boolean returnsProven = true;
+
+  TypeChecker(boolean trustGlobals){
+    this.trustGlobals = trustGlobals;
+  }
+
+  void check(List<Stmt> statements){
+    declarations.clear();
+    classes.clear();
+    fieldNames.clear();
+    widened.clear();
+
+    collecting = true;
+    walk(statements);
+    collecting = false;
+    walk(statements);
+  }
+
+  private void walk(List<Stmt> statements){
+    scopes.clear();
+    globals = new HashMap<>();
+    function = null;
+    returnsProven = true;
+    if(!collecting){
+      // Top-level functions can call ones declared after them, as in
+      // mutual recursion.
+      for(Stmt statement : statements){
+        if(statement instanceof Stmt.Function && ((Stmt.Function)statement).extClass == null){
+          Stmt.Function declaration = (Stmt.Function)statement;
+          globals.put(declaration.name.lexeme, new Symbol(declaration, null));
+        }
+      }
+    }
+    check(statements, false);
+  }
+
+  private void check(List<Stmt> statements, boolean scoped){
+    if(scoped) scopes.push(new HashMap<>());
+    for(Stmt statement : statements){
+      if(statement != null) statement.accept(this);
+    }
+    if(scoped) scopes.pop();
+  }
+
+  private void check(Stmt stmt){
+    if(stmt != null) stmt.accept(this);
+  }
+
+  private LoxType check(Expr expr){
+    return expr == null ? null : expr.accept(this);
+  }
+
+  private void error(Token token, String message){
+    if(!collecting) Lox.error(token, message);
+  }
+
+  // Types whose runtime LoxType is exactly the declared one once a check
+  // has passed. 'any', 'void' and generics are never trusted.
+  private static boolean concrete(LoxType type){
+    if(type == null) return false;
+    switch(type.type){
+      case NUMBER:
+      case STRING:
+      case BOOLEAN:
+      case OBJECT:
+      case TYPE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isPrimitive(LoxType type){
+    return type == NUMBER || type == STRING || type == BOOLEAN;
+  }
+
+  private static LoxType primitive(LoxType type){
+    return type == null ? null : type.intern();
+  }
+
+  private static boolean proves(LoxType value, LoxType declared){
+    if(declared.type == TypeEnum.ANY) return true;
+    return value != null && value.matches(declared);
+  }
+
+  private static boolean mismatch(LoxType value, LoxType declared){
+    return value != null && declared.type != TypeEnum.ANY && !value.matches(declared);
+  }
+
+  private static boolean isNil(Expr expr){
+    return expr instanceof Expr.Literal && ((Expr.Literal)expr).value == null;
+  }
+
+  // unsigned and byte are checked against the value, not the type.
+  private static boolean valueChecked(Modifiers modifiers){
+    return modifiers.contains(TokenType.UNSIGNED) || modifiers.contains(TokenType.BYTE);
+  }
+
+  private static LoxType defaultType(LoxType type){
+    if(type.name.contains("[]")) return type;
+    switch(type.type){
+      case STRING: return STRING;
+      case NUMBER: return NUMBER;
+      case BOOLEAN: return BOOLEAN;
+      default: return null;
+    }
+  }
+
+  // A compound '+=' turns anything but a number or a string into a string.
+  private LoxType trusted(Object declaration, LoxType type){
+    if(!concrete(type)) return null;
+    LoxType primitive = primitive(type);
+    if(widened.contains(declaration) && primitive != NUMBER && primitive != STRING) return null;
+    return primitive;
+  }
+
+  private void declare(String name, Symbol symbol){
+    if(!scopes.isEmpty()){
+      scopes.peek().put(name, symbol);
+      return;
+    }
+    if(collecting){
+      Integer count = declarations.get(name);
+      declarations.put(name, count == null ? 1 : count + 1);
+    }
+    globals.put(name, symbol);
+  }
+
+  private Symbol lookup(String name){
+    for(int i = scopes.size() - 1; i >= 0; i--){
+      Symbol symbol = scopes.get(i).get(name);
+      if(symbol != null) return symbol;
+    }
+    Symbol symbol = globals.get(name);
+    if(symbol == null) return Symbol.UNKNOWN;
+    if(symbol.declaration instanceof Stmt.Var){
+      // Constants can't be assigned or redeclared.
+      if(!((Stmt.Var)symbol.declaration).modifiers.contains(TokenType.CONST)) return Symbol.UNKNOWN;
+    }
+    else if(!trustGlobals || !declaredOnce(name)) return Symbol.UNKNOWN;
+    return symbol;
+  }
+
+  // Only classes declared once anywhere can be told apart by name.
+  private Stmt.Class classNamed(String name){
+    Stmt.Class klass = classes.get(name);
+    if(klass == null || !trustGlobals || !declaredOnce("class " + name)) return null;
+    return klass;
+  }
+
+  private boolean declaredOnce(String key){
+    Integer count = declarations.get(key);
+    return count != null && count == 1;
+  }
+
+  private Stmt.Function findMethod(Stmt.Class klass, String name){
+    while(klass != null){
+      // Generic classes declare parameters in terms of their templates.
+      if(!klass.templates.isEmpty()) return null;
+      if(declarations.containsKey("extension " + klass.name.lexeme + "." + name)) return null;
+      for(Stmt.Function method : klass.methods){
+        if(method.name.lexeme.equals(name)) return method;
+      }
+      klass = klass.superclass == null ? null : classNamed(klass.superclass.name.lexeme);
+    }
+    return null;
+  }
+
+  private static LoxType returnType(Stmt.Function declaration){
+    if(declaration.hasBody == Boolean.FALSE) return null;
+    if(!concrete(declaration.returnType)) return null;
+    return primitive(declaration.returnType);
+  }
+
+  private void checkFunction(Stmt.Function declaration, Stmt.Function owner, List<Parameter> params, List<Stmt> body){
+    Stmt.Function enclosing = function;
+    boolean enclosingProven = returnsProven;
+    function = owner;
+    returnsProven = true;
+
+    scopes.push(new HashMap<>());
+    if(declaration != null && declaration.hasThis) scopes.peek().put("this", Symbol.UNKNOWN);
+    for(Parameter param : params){
+      // A parameter is checked on entry unless the call site proved it.
+      declare(param.name.lexeme, new Symbol(param, trusted(param, param.type)));
+    }
+    if(body != null && (declaration == null || declaration.hasBody != Boolean.FALSE)) check(body, false);
+    scopes.pop();
+
+    if(owner != null && !collecting) owner.returnChecked = returnsProven;
+    function = enclosing;
+    returnsProven = enclosingProven;
+  }
+
+  private void checkFunction(Stmt.Function declaration){
+    checkFunction(declaration, declaration, declaration.params, declaration.body);
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    check(stmt.statements, true);
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    if(collecting){
+      String key = "class " + stmt.name.lexeme;
+      Integer count = declarations.get(key);
+      declarations.put(key, count == null ? 1 : count + 1);
+      classes.put(stmt.name.lexeme, stmt);
+      for(Stmt.Var variable : stmt.variables) fieldNames.add(variable.name.lexeme);
+      for(Stmt.Property property : stmt.props) fieldNames.add(property.name.lexeme);
+    }
+    declare(stmt.name.lexeme, new Symbol(stmt, null));
+    if(stmt.superclass != null) check(stmt.superclass);
+
+    scopes.push(new HashMap<>());
+    declare("this", Symbol.UNKNOWN);
+    declare("super", Symbol.UNKNOWN);
+    for(Token template : stmt.templates){
+      declare(template.lexeme, Symbol.UNKNOWN);
+    }
+    for(Stmt.Function method : stmt.methods){
+      checkFunction(method);
+    }
+    for(Stmt.Var variable : stmt.variables){
+      check(variable);
+    }
+    for(Stmt.Property property : stmt.props){
+      checkProperty(property);
+    }
+    scopes.pop();
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    check(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    if(stmt.extClass != null){
+      if(collecting) declarations.put("extension " + stmt.extClass.lexeme + "." + stmt.name.lexeme, 1);
+      declare(stmt.name.lexeme, Symbol.UNKNOWN);
+    }
+    else{
+      declare(stmt.name.lexeme, new Symbol(stmt, null));
+    }
+    checkFunction(stmt);
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    check(stmt.condition);
+    check(stmt.thenBranch);
+    check(stmt.elseBranch);
+    return null;
+  }
+
+  @Override
+  public Void visitWhenStmt(Stmt.When stmt) {
+    check(stmt.condition);
+    check(stmt.thenBranch);
+    check(stmt.finallyBranch);
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    LoxType value = check(stmt.value);
+    if(function == null) return null;
+
+    LoxType expected = function.returnType;
+    if(expected.type == TypeEnum.ANY) return null;
+    if(stmt.value == null){
+      if(expected.type != TypeEnum.VOID) returnsProven = false;
+    }
+    else if(mismatch(value, expected)){
+      error(stmt.keyword, "Expected type '" + expected + "' for function '" + function.name.lexeme + "' return value");
+    }
+    else if(!proves(value, expected)){
+      returnsProven = false;
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitExpectStmt(Stmt.Expect stmt) {
+    check(stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    LoxType value = stmt.initializer != null ? check(stmt.initializer) : defaultType(stmt.type);
+    boolean nil = isNil(stmt.initializer);
+
+    if(mismatch(value, stmt.type)){
+      error(stmt.name, "Cant assign value of type '" + value + "' to variable '" + stmt.name.lexeme + "' of type '" + stmt.type + "'");
+    }
+    else if(!collecting && !valueChecked(stmt.modifiers) && (nil || proves(value, stmt.type))){
+      stmt.checked = true;
+    }
+
+    declare(stmt.name.lexeme, new Symbol(stmt, value != null ? trusted(stmt, stmt.type) : null));
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    check(stmt.condition);
+    check(stmt.body);
+    return null;
+  }
+
+  @Override
+  public Void visitForEachStmt(Stmt.ForEach stmt) {
+    check(stmt.iterable);
+    scopes.push(new HashMap<>());
+    // Each element is checked against the variable's type as the loop runs.
+    declare(stmt.variable.name.lexeme, new Symbol(stmt.variable, trusted(stmt.variable, stmt.variable.type)));
+    check(stmt.body);
+    scopes.pop();
+    return null;
+  }
+
+  @Override
+  public Void visitTestStmt(Stmt.Test stmt) {
+    check(stmt.name);
+    check(stmt.body);
+    return null;
+  }
+
+  @Override
+  public Void visitGetFileStmt(Stmt.GetFile stmt) {
+    return null;
+  }
+
+  @Override
+  public Void visitModuleStmt(Stmt.Module stmt) {
+    return null;
+  }
+
+  @Override
+  public Void visitInterfaceStmt(Stmt.Interface stmt) {
+    declare(stmt.name.lexeme, Symbol.UNKNOWN);
+    scopes.push(new HashMap<>());
+    for(Stmt.Function method : stmt.methods){
+      checkFunction(method);
+    }
+    scopes.pop();
+    return null;
+  }
+
+  @Override
+  public Void visitEnumStmt(Stmt.Enum stmt) {
+    declare(stmt.name.lexeme, Symbol.UNKNOWN);
+    return null;
+  }
+
+  @Override
+  public Void visitSwitchStmt(Stmt.Switch stmt) {
+    check(stmt.value);
+    for(Stmt.Case c : stmt.cases){
+      check(c);
+    }
+    if(stmt.defaultCase != null) check(stmt.defaultCase);
+    return null;
+  }
+
+  @Override
+  public Void visitCaseStmt(Stmt.Case stmt) {
+    check(stmt.value);
+    check(stmt.body);
+    return null;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    return null;
+  }
+
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    return null;
+  }
+
+  @Override
+  public Void visitPropertyStmt(Stmt.Property stmt) {
+    declare(stmt.name.lexeme, Symbol.UNKNOWN);
+    checkProperty(stmt);
+    return null;
+  }
+
+  private void checkProperty(Stmt.Property stmt) {
+    checkFunction(stmt.get);
+    if(stmt.set != null) checkFunction(stmt.set);
+  }
+
+  @Override
+  public Void visitTryStmt(Stmt.Try stmt) {
+    check(stmt.tryBranch);
+    scopes.push(new HashMap<>());
+    declare(stmt.exName.lexeme, Symbol.UNKNOWN);
+    check(stmt.catchBranch, false);
+    scopes.pop();
+    return null;
+  }
+
+  @Override
+  public LoxType visitAssignExpr(Expr.Assign expr) {
+    LoxType value = check(expr.value);
+    Symbol symbol = lookup(expr.name.lexeme);
+    if(collecting){
+      if(expr.type == AssignType.ADD && symbol.declaration != null) widened.add(symbol.declaration);
+      return null;
+    }
+
+    LoxType type = symbol.type;
+    if(type == null) return null;
+    switch(expr.type){
+      case SET:
+        if(mismatch(value, type)){
+          error(expr.name, "Cant assign value of type '" + value + "' to variable '" + expr.name.lexeme + "' of type '" + type + "'");
+        }
+        expr.checked = proves(value, type);
+        break;
+      case ADD:
+        expr.checked = (type == NUMBER || type == STRING) && value == type;
+        break;
+      default:
+        expr.checked = type == NUMBER && value == NUMBER;
+        break;
+    }
+    return type;
+  }
+
+  @Override
+  public LoxType visitBinaryExpr(Expr.Binary expr) {
+    LoxType left = check(expr.left);
+    LoxType right = check(expr.right);
+    // Anything else could be an instance with an operator method.
+    if(!isPrimitive(left) || !isPrimitive(right)) return null;
+
+    switch(expr.operator.type){
+      case EQUAL_EQUAL:
+      case BANG_EQUAL:
+        return BOOLEAN;
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        return left == NUMBER && right == NUMBER ? BOOLEAN : null;
+      case MINUS:
+      case SLASH:
+      case STAR:
+        return left == NUMBER && right == NUMBER ? NUMBER : null;
+      case PLUS:
+        if(left == NUMBER && right == NUMBER) return NUMBER;
+        return left == STRING || right == STRING ? STRING : null;
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  public LoxType visitCallExpr(Expr.Call expr) {
+    Stmt.Function declaration = null;
+    LoxType result = null;
+
+    if(expr.callee instanceof Expr.Get){
+      Expr.Get get = (Expr.Get)expr.callee;
+      LoxType receiver = check(get.object);
+      Stmt.Class klass = receiver != null && receiver.type == TypeEnum.OBJECT ? classNamed(receiver.name) : null;
+      if(klass != null && !fieldNames.contains(get.name.lexeme)){
+        declaration = findMethod(klass, get.name.lexeme);
+        if(declaration != null && declaration.modifiers.contains(TokenType.STATIC)) declaration = null;
+        if(declaration != null) result = returnType(declaration);
+      }
+    }
+    else{
+      check(expr.callee);
+      if(expr.callee instanceof Expr.Variable){
+        Object target = lookup(((Expr.Variable)expr.callee).name.lexeme).declaration;
+        if(target instanceof Stmt.Function){
+          declaration = (Stmt.Function)target;
+          result = returnType(declaration);
+        }
+        else if(target instanceof Stmt.Class && expr.templates.isEmpty()){
+          Stmt.Class klass = classNamed(((Stmt.Class)target).name.lexeme);
+          if(klass != null){
+            declaration = findMethod(klass, "constructor");
+            result = LoxType.of(TypeEnum.OBJECT, klass.name.lexeme);
+          }
+        }
+      }
+    }
+
+    LoxType[] arguments = new LoxType[expr.arguments.size()];
+    for(int i = 0; i < arguments.length; i++){
+      arguments[i] = check(expr.arguments.get(i));
+    }
+    if(expr.nullCheck) result = null;
+
+    if(declaration == null || !expr.templates.isEmpty() || declaration.modifiers.contains(TokenType.OPERATOR)) return result;
+    if(declaration.params.size() != arguments.length) return result;
+
+    boolean proven = true;
+    for(int i = 0; i < arguments.length; i++){
+      Parameter param = declaration.params.get(i);
+      if(mismatch(arguments[i], param.type)){
+        error(expr.paren, "Expected type '" + param.type + "' for parameter '" + param.name.lexeme + "' of function '" + declaration.name.lexeme + "' but got type '" + arguments[i] + "' instead");
+        proven = false;
+      }
+      else if(!proves(arguments[i], param.type)){
+        proven = false;
+      }
+    }
+    if(proven && !collecting) expr.checkedFor = declaration;
+    return result;
+  }
+
+  @Override
+  public LoxType visitGetExpr(Expr.Get expr) {
+    check(expr.object);
+    return null;
+  }
+
+  @Override
+  public LoxType visitGetIndexExpr(Expr.GetIndex expr) {
+    check(expr.object);
+    check(expr.index);
+    return null;
+  }
+
+  @Override
+  public LoxType visitGetStaticExpr(Expr.GetStatic expr) {
+    check(expr.object);
+    return null;
+  }
+
+  @Override
+  public LoxType visitSetAssignExpr(Expr.SetAssign expr) {
+    check(expr.object);
+    check(expr.value);
+    return null;
+  }
+
+  @Override
+  public LoxType visitCoalesceExpr(Expr.Coalesce expr) {
+    check(expr.object);
+    return null;
+  }
+
+  @Override
+  public LoxType visitGroupingExpr(Expr.Grouping expr) {
+    return check(expr.expression);
+  }
+
+  @Override
+  public LoxType visitLiteralExpr(Expr.Literal expr) {
+    Object value = expr.value;
+    if(value instanceof Double || value instanceof Integer) return NUMBER;
+    if(value instanceof String) return STRING;
+    if(value instanceof Boolean) return BOOLEAN;
+    return null;
+  }
+
+  @Override
+  public LoxType visitLogicalExpr(Expr.Logical expr) {
+    LoxType left = check(expr.left);
+    LoxType right = check(expr.right);
+    if(expr.operator.type == TokenType.IS) return BOOLEAN;
+    return isPrimitive(left) && left == right ? left : null;
+  }
+
+  @Override
+  public LoxType visitSetExpr(Expr.Set expr) {
+    if(collecting) fieldNames.add(expr.name.lexeme);
+    LoxType value = check(expr.value);
+    check(expr.object);
+    return value;
+  }
+
+  @Override
+  public LoxType visitSetIndexExpr(Expr.SetIndex expr) {
+    LoxType array = check(expr.object);
+    check(expr.index);
+    LoxType value = check(expr.value);
+    if(array == null || !array.name.endsWith("[]")) return null;
+
+    LoxType element = LoxType.of(array.type, array.name.substring(0, array.name.length() - 2));
+    if(mismatch(value, element)){
+      error(expr.name, "Type mismatch for array of type '" + array + "' and '" + value + "'");
+    }
+    else if(!collecting){
+      expr.checked = proves(value, element);
+    }
+    return value;
+  }
+
+  @Override
+  public LoxType visitSuperExpr(Expr.Super expr) {
+    return null;
+  }
+
+  @Override
+  public LoxType visitThisExpr(Expr.This expr) {
+    // The receiver may be an instance of a subclass.
+    return null;
+  }
+
+  @Override
+  public LoxType visitValueExpr(Expr.Value expr) {
+    return null;
+  }
+
+  @Override
+  public LoxType visitUnaryExpr(Expr.Unary expr) {
+    LoxType right = check(expr.right);
+    if(expr.operator.type == TokenType.BANG) return BOOLEAN;
+    if(expr.operator.type == TokenType.MINUS && right == NUMBER) return NUMBER;
+    return null;
+  }
+
+  @Override
+  public LoxType visitVariableExpr(Expr.Variable expr) {
+    return lookup(expr.name.lexeme).type;
+  }
+
+  @Override
+  public LoxType visitNewExpr(Expr.New expr) {
+    check(expr.callee);
+    for(Expr argument : expr.arguments){
+      check(argument);
+    }
+    return null;
+  }
+
+  @Override
+  public LoxType visitTypeofExpr(Expr.Typeof expr) {
+    check(expr.value);
+    return TYPE;
+  }
+
+  @Override
+  public LoxType visitLengthExpr(Expr.Length expr) {
+    LoxType value = check(expr.value);
+    if(value == STRING || (value != null && value.name.endsWith("[]"))) return NUMBER;
+    return null;
+  }
+
+  @Override
+  public LoxType visitAnonymousFunctionExpr(Expr.AnonymousFunction expr) {
+    // Anonymous functions get a fresh declaration each time they're
+    // evaluated, so there's nowhere to keep a proven return.
+    checkFunction(null, null, expr.params, expr.body);
+    return null;
+  }
+
+  @Override
+  public LoxType visitCastExpr(Expr.Cast expr) {
+    check(expr.value);
+    check(expr.castType);
+    return null;
+  }
+
+  @Override
+  public LoxType visitArrayExpr(Expr.Array expr) {
+    LoxType first = null;
+    for(int i = 0; i < expr.values.size(); i++){
+      LoxType value = check(expr.values.get(i));
+      if(i == 0) first = value;
+    }
+    check(expr.size);
+
+    LoxType element = expr.type != null ? expr.type : first;
+    if(!concrete(element) || element.name.endsWith("[]")) return null;
+    return LoxType.of(element.type, element.name + "[]");
+  }
+
+  @Override
+  public LoxType visitTernaryExpr(Expr.Ternary expr) {
+    check(expr.condition);
+    LoxType thenType = check(expr.thenBranch);
+    LoxType elseType = check(expr.elseBranch);
+    return isPrimitive(thenType) && thenType == elseType ? thenType : null;
+  }
+
+  @Override
+  public LoxType visitTypeExpr(Expr.Type expr) {
+    return TYPE;
+  }
+}
@@ -11,28 +11,28 @@ public class GenerateAst {
     String ouputDir = args[0];
     try {
       defineAst(ouputDir, "Expr", Arrays.asList(
-        "Assign   : Token name, Expr value, AssignType type",
-        "Binary   : Expr left, Token operator, Expr right",
-        "Call     : Expr callee, Token paren, List<Expr> arguments, boolean nullCheck, List<Token> templates",
-        "Get      : Expr object, Token name",
+        "Assign   : Token name, Expr value, AssignType type | int depth = -1, int slot = -1, Modifiers modifiers = null, LoxType varType = null, boolean checked = false, boolean boxed = false, Field global = null, int version = -1",
+        "Binary   : Expr left, Token operator, Expr right | BinaryNode node = null, InlineCache cache = null",
+        "Call     : Expr callee, Token paren, List<Expr> arguments, boolean nullCheck, List<Token> templates | InlineCache cache = null, Stmt.Function checkedFor = null, Stmt.Function inlinedFrom = null, Expr inlined = null",
+        "Get      : Expr object, Token name | InlineCache cache = null",
         "GetIndex : Expr object, Expr index, Token name",
-        "GetStatic: Expr object, Token name",
+        "GetStatic: Expr object, Token name | InlineCache cache = null",
         "SetAssign: Expr object, Token name, Expr value",
         "Coalesce      : Expr object, Token name",
         "Grouping : Expr expression",
         "Literal  : Object value",
         "Logical  : Expr left, Token operator, Expr right",
         "Set      : Expr object, Token name, Expr value",
-        "SetIndex : Expr object, Token name, Expr value, Expr index",
-        "Super    : Token keyword, Token method",
-        "This     : Token keyword",
-        "Value     : Token keyword",
+        "SetIndex : Expr object, Token name, Expr value, Expr index | boolean checked = false",
+        "Super    : Token keyword, Token method | int depth = -1, int slot = -1, int thisDepth = -1",
+        "This     : Token keyword | int depth = -1, int slot = -1",
+        "Value     : Token keyword | int depth = -1, int slot = -1",
         "Unary    : Token operator, Expr right",
-        "Variable : Token name",
+        "Variable : Token name | int depth = -1, int slot = -1, boolean boxed = false, Field global = null, int version = -1",
         "New      : Token keyword, Expr callee, Token paren, List<Expr> arguments",
         "Typeof: Expr value",
         "Length: Expr value, Token name",
-        "AnonymousFunction: List<Parameter> params, List<Stmt> body, LoxType returnType",
+        "AnonymousFunction: List<Parameter> params, List<Stmt> body, LoxType returnType | List<Expr.Variable> captures = null, int[] cells = null",
         "Cast: Token operator, Expr value, Expr castType",
         "Array: LoxType type, List<Expr> values, Expr size",
         "Ternary: Token operator, Expr condition, Expr thenBranch, Expr elseBranch",
@@ -42,27 +42,28 @@ public class GenerateAst {
       defineAst(ouputDir, "Stmt", Arrays.asList(
         "Block      : List<Stmt> statements",
         "Class      : Token name, Expr.Variable superclass," +
-                  " List<Stmt.Function> methods, List<Stmt.Var> variables, List<Stmt.Property> props, List<Token> templates, List<Token> interfase",
+                  " List<Stmt.Function> methods, List<Stmt.Var> variables, List<Stmt.Property> props, List<Token> templates, List<Token> interfase | int slot = -1",
         "Expression : Expr expression",
         "Function   : Token name, Token extClass, List<Parameter> params," +
-                  " List<Stmt> body, Modifiers modifiers, Boolean hasBody, LoxType returnType",
+                  " List<Stmt> body, Modifiers modifiers, Boolean hasBody, LoxType returnType | int slot = -1, boolean hasThis = false, boolean returnChecked = false, boolean frameCaptured = false, boolean tailCallsOthers = false, String[] frameNames = null, List<Expr.Variable> captures = null, int[] cells = null",
         "If         : Expr condition, Stmt thenBranch," +
                     " Stmt elseBranch",
         "When         : Expr condition, Stmt thenBranch, Stmt finallyBranch",
-        "Return     : Token keyword, Expr value",
+        "Return     : Token keyword, Expr value | Expr.Call tailCall = null",
         "Expect     : Token keyword, Expr value",
-        "Var        : Token name, Expr initializer, Modifiers modifiers, LoxType type",
+        "Var        : Token name, Expr initializer, Modifiers modifiers, LoxType type | int slot = -1, boolean checked = false, boolean boxed = false",
         "While      : Expr condition, Stmt body",
+        "ForEach    : Token keyword, Stmt.Var variable, Expr iterable, Stmt body",
         "Test      : Expr name, Stmt body",
         "GetFile     : Token name, Expr path",
         "Module    : Token keyword",
-        "Interface : Token name, List<Stmt.Function> methods, List<Stmt.Var> variables",
-        "Enum : Token name, List<LoxEnum.Element> elements",
-        "Switch : Expr value, List<Stmt.Case> cases, Stmt.Case defaultCase",
+        "Interface : Token name, List<Stmt.Function> methods, List<Stmt.Var> variables | int slot = -1",
+        "Enum : Token name, List<LoxEnum.Element> elements | int slot = -1",
+        "Switch : Expr value, List<Stmt.Case> cases, Stmt.Case defaultCase | SwitchTable table = null",
         "Case: Expr value, Stmt body",
         "Break: Token keyword",
         "Continue: Token keyword",
-        "Property: Token name, Modifiers modifiers, LoxType type, Stmt.Function get, Stmt.Function set",
+        "Property: Token name, Modifiers modifiers, LoxType type, Stmt.Function get, Stmt.Function set | int slot = -1",
         "Try: Stmt tryBranch, List<Stmt> catchBranch, Token exName"
       ));
     } catch (IOException e) {
@@ -85,7 +86,12 @@ public class GenerateAst {
     for(String type : types){
       String className = type.split(":")[0].trim();
       String fields = type.split(":")[1].trim();
-      defineType(writer, baseName, className, fields);
+      String annotations = null;
+      if(fields.contains("|")){
+        annotations = fields.split("\\|")[1].trim();
+        fields = fields.split("\\|")[0].trim();
+      }
+      defineType(writer, baseName, className, fields, annotations);
     }
 
     writer.println();
@@ -95,7 +101,7 @@ public class GenerateAst {
     writer.close();
   }
 
-  private static void defineType(PrintWriter writer, String baseName, String className, String fieldList){
+  private static void defineType(PrintWriter writer, String baseName, String className, String fieldList, String annotations){
     writer.println("  static class " + className + " extends " +
         baseName + " {");
 
@@ -124,6 +130,13 @@ public class GenerateAst {
       writer.println("    final " + field + ";");
     }
 
+    // Annotations filled in by later passes (the resolver etc).
+    if(annotations != null){
+      for (String annotation : annotations.split(", ")) {
+        writer.println("    " + annotation + ";");
+      }
+    }
+
     writer.println("  }");
   }
 
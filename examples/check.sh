@@ -0,0 +1,26 @@
+#!/bin/sh
+# Builds the interpreter and runs every example under each engine, comparing
+# what it prints with the example's .out file. An example whose first line
+# is "// modes: ..." only runs with those flags; "-" is the plain tree-walker
+# and "+" joins several flags into one run.
+cd "$(dirname "$0")/.." || exit 1
+classes=$(mktemp -d)
+trap 'rm -rf "$classes"' EXIT
+javac -nowarn -d "$classes" com/nix/lox/*.java || exit 1
+
+failed=0
+for script in examples/*.lox; do
+  modes=$(sed -n '1s|^// modes:||p' "$script")
+  [ -n "$modes" ] || modes="- --specialize --jit"
+  for mode in $modes; do
+    flags=$(echo "$mode" | tr '+' ' ')
+    [ "$mode" = "-" ] && flags=""
+    if java -cp "$classes" com.nix.lox.Lox $flags "$script" 2>&1 | diff "${script%.lox}.out" - > /dev/null; then
+      echo "ok   $script $flags"
+    else
+      echo "FAIL $script $flags"
+      failed=1
+    fi
+  done
+done
+exit $failed